@@ -51,6 +51,13 @@ public abstract class AbstractNode<P extends Provider<? extends AbstractNode>, A
 
     public void reactivate() {}
 
+    /**
+     * Estimates the number of bytes of heap memory retained by this node.
+     *
+     * @return
+     */
+    public abstract long estimateSize();
+
     public static <P extends Provider> AbstractNode read(DataInput in, P p) throws IOException {
         AbstractNode n;
         if(in.readBoolean()) {
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika;
+
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+
+/**
+ * The {@code BucketQueue} is a priority queue for elements with a small, non negative integer key. The elements are
+ * stored in one bucket per key, so that adding an element and polling the element with the lowest key do not
+ * require any comparisons between keys. The order of the elements within a bucket is determined by the bucket
+ * itself, for instance the insertion order for an {@code ArrayDeque}.
+ *
+ * @author Lukas Molzberger
+ */
+public class BucketQueue<E> {
+
+    private final ToIntFunction<E> key;
+    private final int offset;
+    private final Supplier<Queue<E>> bucketFactory;
+
+    private final ArrayList<Queue<E>> buckets = new ArrayList<>();
+    // The index of the lowest bucket that might not be empty.
+    private int min = Integer.MAX_VALUE;
+    private int size;
+
+
+    /**
+     * @param key
+     * @param offset Is added to the keys, so that keys down to {@code -offset} can be used.
+     * @param bucketFactory
+     */
+    public BucketQueue(ToIntFunction<E> key, int offset, Supplier<Queue<E>> bucketFactory) {
+        this.key = key;
+        this.offset = offset;
+        this.bucketFactory = bucketFactory;
+    }
+
+
+    public void add(E e) {
+        int i = key.applyAsInt(e) + offset;
+        assert i >= 0;
+
+        while(buckets.size() <= i) {
+            buckets.add(null);
+        }
+
+        Queue<E> b = buckets.get(i);
+        if(b == null) {
+            b = bucketFactory.get();
+            buckets.set(i, b);
+        }
+        b.add(e);
+
+        size++;
+        min = Math.min(min, i);
+    }
+
+
+    public E poll() {
+        if(size == 0) {
+            return null;
+        }
+
+        Queue<E> b = buckets.get(min);
+        while(b == null || b.isEmpty()) {
+            b = buckets.get(++min);
+        }
+
+        size--;
+        if(size == 0) {
+            E e = b.poll();
+            min = Integer.MAX_VALUE;
+            return e;
+        }
+        return b.poll();
+    }
+
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    public int size() {
+        return size;
+    }
+}
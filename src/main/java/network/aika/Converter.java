@@ -35,6 +35,7 @@ import static network.aika.neuron.activation.Range.Mapping.NONE;
 public class Converter {
 
     public static int MAX_AND_NODE_SIZE = 6;
+    public static int MAX_CONVERSION_RETRIES = 100;
 
 
     public static Comparator<Synapse> SYNAPSE_COMP = (s1, s2) -> {
@@ -55,8 +56,22 @@ public class Converter {
     private Collection<Synapse> modifiedSynapses;
 
 
+    /**
+     * Applies the deltas of the modified synapses and converts the neuron into the pattern lattice. Concurrent
+     * conversions of the same neuron are serialized, since folding and applying the deltas is not atomic. The
+     * neuron's read write lock is not used for this purpose, because the input neurons are locked during the
+     * conversion and two neurons might be inputs of each other.
+     *
+     * @param threadId
+     * @param doc
+     * @param neuron
+     * @param modifiedSynapses
+     * @return
+     */
     public static boolean convert(int threadId, Document doc, INeuron neuron, Collection<Synapse> modifiedSynapses) {
-        return new Converter(threadId, doc, neuron, modifiedSynapses).convert();
+        synchronized (neuron.converterLock) {
+            return new Converter(threadId, doc, neuron, modifiedSynapses).convert();
+        }
     }
 
 
@@ -73,14 +88,37 @@ public class Converter {
 
         initInputNodesAndComputeWeightSums();
 
+        // Invalidated only after the new weights have been applied, since a document that has been processed with
+        // the old weights might still store its decisions until then. Such a store is rejected by the commit counter.
+        neuron.commitCounter++;
+        DecisionCache dc = neuron.provider.model.decisionCache;
+        if(dc != null) {
+            dc.invalidate(neuron.provider.id);
+        }
+
         if(neuron.biasSum + neuron.posDirSum + neuron.posRecSum <= 0.0) {
             neuron.requiredSum = neuron.posDirSum + neuron.posRecSum;
-            outputNode.removeParents(threadId);
+            outputNode.removeParents();
             return false;
         }
 
         List<Synapse> candidates = prepareCandidates();
 
+        // A node of the pattern lattice that has been looked up might be removed by the lattice collector before
+        // this neuron references it. In this case the inputs of the or-node are determined again. The collector only
+        // removes nodes that are not referenced by any neuron, so a retry fails only if the collector wins the race
+        // for a newly created node again. The number of retries is nevertheless limited.
+        for(int retries = 0; !convertToLattice(candidates); retries++) {
+            if(retries >= MAX_CONVERSION_RETRIES) {
+                throw new RuntimeException("The pattern lattice nodes of neuron " + neuron.label + " have been removed concurrently too often.");
+            }
+            Thread.yield();
+        }
+        return true;
+    }
+
+
+    private boolean convertToLattice(List<Synapse> candidates) {
         NodeContext nodeContext = null;
         boolean noFurtherRefinement = false;
         TreeSet<Synapse> reqSyns = new TreeSet<>(Synapse.INPUT_SYNAPSE_COMP);
@@ -103,6 +141,9 @@ public class Converter {
 
                 NodeContext nlNodeContext = expandNode(nodeContext, s);
                 if(nlNodeContext == null) {
+                    if(nodeContext != null && nodeContext.node.isRemoved()) {
+                        return false;
+                    }
                     break;
                 }
                 nodeContext = nlNodeContext;
@@ -119,10 +160,12 @@ public class Converter {
 
             }
 
-            outputNode.removeParents(threadId);
+            outputNode.removeParents();
 
             if (noFurtherRefinement || i == MAX_AND_NODE_SIZE) {
-                outputNode.addInput(nodeContext.getSynapseIds(), threadId, nodeContext.node, true);
+                if(!outputNode.addInput(nodeContext.getSynapseIds(), nodeContext.node, true)) {
+                    return false;
+                }
             } else {
                 for (Synapse s : candidates) {
                     boolean belowThreshold = sum + s.weight + remainingSum + neuron.posRecSum + neuron.biasSum <= 0.0;
@@ -133,17 +176,22 @@ public class Converter {
                     if (!reqSyns.contains(s)) {
                         NodeContext nlNodeContext = expandNode(nodeContext, s);
                         if(nlNodeContext != null) {
-                            outputNode.addInput(nlNodeContext.getSynapseIds(), threadId, nlNodeContext.node, true);
+                            if(!outputNode.addInput(nlNodeContext.getSynapseIds(), nlNodeContext.node, true)) {
+                                return false;
+                            }
                             remainingSum -= s.weight;
+                        } else if(nodeContext.node.isRemoved()) {
+                            return false;
                         }
                     }
                 }
             }
         } else {
+            // The input nodes are never removed by the lattice collector.
             for (Synapse s : modifiedSynapses) {
                 if (s.weight + neuron.posRecSum + neuron.biasSum > 0.0) {
                     NodeContext nlNodeContext = expandNode(nodeContext, s);
-                    outputNode.addInput(nlNodeContext.getSynapseIds(), threadId, nlNodeContext.node, false);
+                    outputNode.addInput(nlNodeContext.getSynapseIds(), nlNodeContext.node, false);
                 }
             }
         }
@@ -195,6 +243,11 @@ public class Converter {
     private void initInputNodesAndComputeWeightSums() {
         double[][] sumDelta = new double[2][2];
 
+        neuron.foldDeltas();
+        for (Synapse s : modifiedSynapses) {
+            s.foldDeltas();
+        }
+
 //        neuron.biasSum = 0.0;
         for (Synapse s : modifiedSynapses) {
             if(s.toBeDeleted) {
@@ -219,6 +272,8 @@ public class Converter {
                 s.bias += s.biasDelta;
                 s.biasDelta = 0.0;
 
+                neuron.updateInputSynapse(s);
+
                 if (doc != null) {
                     s.committedInDoc = doc.id;
                 }
@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika;
+
+
+import network.aika.neuron.INeuron;
+import network.aika.neuron.activation.Activation;
+import network.aika.neuron.activation.Candidate;
+import network.aika.neuron.activation.Range;
+import network.aika.neuron.activation.SearchNode.Decision;
+
+import java.util.*;
+
+
+/**
+ * The {@code DecisionCache} memoizes the decisions of the interpretation search across documents. The search
+ * candidates of a document are split into independent components, i.e. sets of candidates that are neither
+ * linked with each other nor in conflict with each other. Each component is described by a canonical key consisting
+ * of the neurons, the relative ranges and the input values of its activations. If an identical component has already
+ * been searched in a previous document, its decisions are reused as input decisions, so that the search does not
+ * need to branch on them again.
+ *
+ * <p>The entries are evicted in least recently used order and are invalidated whenever the weights of one of the
+ * involved neurons are converted. A component is not stored if one of its neurons has been committed since the
+ * component was computed, since its decisions are then based on outdated weights.
+ *
+ * @author Lukas Molzberger
+ */
+public class DecisionCache {
+
+    public int maxSize;
+
+    public int hits;
+    public int misses;
+
+    private LinkedHashMap<String, Entry> entries;
+
+
+    private static class Entry {
+        Decision[] decisions;
+        int[] neuronIds;
+
+        Entry(Decision[] decisions, int[] neuronIds) {
+            this.decisions = decisions;
+            this.neuronIds = neuronIds;
+        }
+    }
+
+
+    public static class Component {
+        public List<Candidate> candidates = new ArrayList<>();
+        public String key;
+        public boolean memoized;
+
+        // The ids of the neurons of the candidates and their commit counters when the component was computed.
+        int[] neuronIds;
+        int[] commitCounters;
+    }
+
+
+    public DecisionCache(int maxSize) {
+        this.maxSize = maxSize;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > DecisionCache.this.maxSize;
+            }
+        };
+    }
+
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * Splits the candidates of the given document into independent components and applies the memoized decisions
+     * of the components that have already been searched.
+     *
+     * @param doc
+     * @return The conflicting components of this document.
+     */
+    public List<Component> apply(Document doc) {
+        List<Component> components = computeComponents(doc);
+
+        synchronized (this) {
+            for (Component c : components) {
+                Entry e = entries.get(c.key);
+                if (e != null) {
+                    for (int i = 0; i < e.decisions.length; i++) {
+                        Activation act = c.candidates.get(i).activation;
+                        act.inputDecision = e.decisions[i];
+                    }
+                    c.memoized = true;
+                    hits++;
+                } else {
+                    misses++;
+                }
+            }
+        }
+        return components;
+    }
+
+
+    /**
+     * Resets the input decisions of the memoized components. This needs to be called even if the search has failed.
+     *
+     * @param components
+     */
+    public void reset(List<Component> components) {
+        for (Component c : components) {
+            if (c.memoized) {
+                for (Candidate cand : c.candidates) {
+                    cand.activation.inputDecision = Decision.UNKNOWN;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Stores the final decisions of the components that have been searched.
+     *
+     * @param doc
+     * @param components
+     */
+    public void store(Document doc, List<Component> components) {
+        if (doc.approximateInterpretation) return;
+
+        synchronized (this) {
+            for (Component c : components) {
+                if (!c.memoized && !isOutdated(c)) {
+                    Decision[] decisions = new Decision[c.candidates.size()];
+                    for (int i = 0; i < decisions.length; i++) {
+                        decisions[i] = c.candidates.get(i).activation.finalDecision;
+                    }
+                    entries.put(c.key, new Entry(decisions, c.neuronIds));
+                }
+            }
+        }
+    }
+
+
+    private static boolean isOutdated(Component c) {
+        for (int i = 0; i < c.neuronIds.length; i++) {
+            if (c.commitCounters[i] != getCommitCounter(c, c.neuronIds[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static int getCommitCounter(Component c, int neuronId) {
+        for (Candidate cand : c.candidates) {
+            INeuron n = cand.activation.getINeuron();
+            if (n.provider.id == neuronId) {
+                return n.commitCounter;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Removes all the entries whose components contain activations of the given neuron.
+     *
+     * @param neuronId
+     */
+    public synchronized void invalidate(int neuronId) {
+        entries.values().removeIf(e -> Arrays.binarySearch(e.neuronIds, neuronId) >= 0);
+    }
+
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+
+    private static List<Component> computeComponents(Document doc) {
+        int n = doc.candidates.size();
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+
+        for (Candidate c : doc.candidates) {
+            for (Activation.Link l : c.activation.neuronInputs.values()) {
+                if (l.input.candidate != null) {
+                    union(parent, c.id, l.input.candidate.id);
+                }
+            }
+            for (Activation act : c.activation.getConflicts()) {
+                if (act.candidate != null) {
+                    union(parent, c.id, act.candidate.id);
+                }
+            }
+        }
+
+        TreeMap<Integer, Component> componentsByRoot = new TreeMap<>();
+        for (Candidate c : doc.candidates) {
+            componentsByRoot.computeIfAbsent(find(parent, c.id), r -> new Component()).candidates.add(c);
+        }
+
+        List<Component> results = new ArrayList<>();
+        for (Component c : componentsByRoot.values()) {
+            boolean conflicting = false;
+            for (Candidate cand : c.candidates) {
+                if (cand.activation.inputDecision != Decision.UNKNOWN || cand.id < doc.numberOfFrozenCandidates) {
+                    conflicting = false;
+                    break;
+                }
+                conflicting |= cand.isConflicting();
+            }
+
+            // Components without conflicts and components with predefined or frozen decisions are not searched anyway.
+            if (conflicting) {
+                c.key = computeKey(c);
+                initCommitCounters(c);
+                results.add(c);
+            }
+        }
+        return results;
+    }
+
+
+    private static void initCommitCounters(Component c) {
+        TreeMap<Integer, Integer> commitCounters = new TreeMap<>();
+        for (Candidate cand : c.candidates) {
+            INeuron n = cand.activation.getINeuron();
+            commitCounters.put(n.provider.id, n.commitCounter);
+        }
+        c.neuronIds = commitCounters.keySet().stream().mapToInt(id -> id).toArray();
+        c.commitCounters = commitCounters.values().stream().mapToInt(cc -> cc).toArray();
+    }
+
+
+    /**
+     * The key references the activations within the component by their index in the component and all other
+     * activations by their neuron, their relative range and their input value.
+     */
+    private static String computeKey(Component c) {
+        Map<Activation, Integer> index = new HashMap<>();
+        int offset = Integer.MAX_VALUE;
+        for (Candidate cand : c.candidates) {
+            index.put(cand.activation, index.size());
+            if (cand.activation.range.begin != Integer.MIN_VALUE) {
+                offset = Math.min(offset, cand.activation.range.begin);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Candidate cand : c.candidates) {
+            Activation act = cand.activation;
+            sb.append(act.getINeuron().provider.id);
+            sb.append(rangeToString(act.range, offset));
+
+            List<String> inputs = new ArrayList<>();
+            for (Activation.Link l : act.neuronInputs.values()) {
+                inputs.add(l.synapse.id + ":" + activationToString(l.input, index, offset));
+            }
+            Collections.sort(inputs);
+            sb.append(inputs);
+
+            List<String> conflicts = new ArrayList<>();
+            for (Activation cAct : act.getConflicts()) {
+                conflicts.add(activationToString(cAct, index, offset));
+            }
+            Collections.sort(conflicts);
+            sb.append(conflicts);
+            sb.append(";");
+        }
+        return sb.toString();
+    }
+
+
+    private static String activationToString(Activation act, Map<Activation, Integer> index, int offset) {
+        Integer i = index.get(act);
+        if (i != null) {
+            return "#" + i;
+        }
+        return act.getINeuron().provider.id + rangeToString(act.range, offset) + "=" + act.inputValue;
+    }
+
+
+    private static String rangeToString(Range r, int offset) {
+        return "(" + (r.begin != Integer.MIN_VALUE ? r.begin - offset : "-") + "," +
+                (r.end != Integer.MAX_VALUE ? r.end - offset : "-") + ")";
+    }
+
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra != rb) {
+            parent[Math.max(ra, rb)] = Math.min(ra, rb);
+        }
+    }
+}
@@ -8,6 +8,8 @@ public enum DistanceFunction {
     NONE((iAct, oAct) -> 1.0),
     DEGRADING((iAct, oAct) -> 1.0 / ((double) (1 + Math.abs(oAct.range.begin - iAct.range.begin))));
 
+    private static final DistanceFunction[] VALUES = values();
+
     Function f;
 
     DistanceFunction(Function f) {
@@ -19,6 +21,11 @@ public enum DistanceFunction {
     }
 
 
+    public static DistanceFunction getByOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+
     interface Function {
         double f(Activation iAct, Activation oAct);
     }
@@ -19,7 +19,9 @@ package network.aika;
 
 import network.aika.lattice.Node;
 import network.aika.lattice.NodeActivation;
+import network.aika.lattice.OrNode;
 import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
 import network.aika.neuron.Synapse;
 import network.aika.neuron.activation.Activation;
 import network.aika.neuron.activation.Candidate;
@@ -54,14 +56,28 @@ public class Document implements Comparable<Document> {
     public static int MAX_ROUND = 20;
 
     /**
-     * Experimental code: not working yet!
+     * If enabled, input activations may be added to a document that has already been processed. The next call of
+     * {@code process} only links and searches the newly added activations together with the candidates that are
+     * directly connected to them. The decisions of all other candidates remain frozen.
      */
     public static boolean INCREMENTAL_MODE = false;
 
+    /**
+     * If enabled, the estimated size of the document is recorded after the search and before the activations are
+     * cleared. Estimating the size requires a pass over all activations of the document.
+     */
+    public static boolean TRACK_PEAK_SIZE = false;
+
     public final int id;
     private final String content;
 
     public long visitedCounter = 1;
+
+    /**
+     * The link version is incremented whenever a link between two activations is added or removed. It is used to
+     * validate the cached self referencing checks of the links.
+     */
+    public long linkVersion;
     public int activationIdCounter = 0;
     public int searchNodeIdCounter = 0;
     public int searchStepCounter = 0;
@@ -116,10 +132,30 @@ public class Document implements Comparable<Document> {
 
 
     public SearchNode selectedSearchNode;
+
+    /**
+     * Set if the interpretation search has skipped parts of the search space, so that the selected interpretation
+     * is not guaranteed to be the best one.
+     */
+    public boolean approximateInterpretation;
     public ArrayList<Candidate> candidates = new ArrayList<>();
 
+    // The first candidates, whose decisions are kept from the previous search in the incremental mode.
+    public int numberOfFrozenCandidates;
+    private long frozenV;
+
+    /**
+     * The candidates whose activations are currently selected, indexed by the candidate id. Together with the
+     * conflict arrays of the candidates it allows the search to test for excluded candidates without touching the
+     * conflicting activations.
+     */
+    public BitSet selectedCandidates = new BitSet();
+
     public long createV;
 
+    // Written by the thread that processes this document, may be read by other threads.
+    public volatile long peakEstimatedSize;
+
 
     public static Comparator<Activation> ACTIVATIONS_OUTPUT_COMPARATOR = (act1, act2) -> {
         int r = Range.compare(act1.range, act2.range, false);
@@ -162,6 +198,16 @@ public class Document implements Comparable<Document> {
     }
 
 
+    /**
+     * Whether this document is processed incrementally, see {@code INCREMENTAL_MODE}.
+     *
+     * @return
+     */
+    public boolean isIncremental() {
+        return INCREMENTAL_MODE;
+    }
+
+
     public Stream<Activation> getFinalActivations() {
         return getActivations().filter(act -> act.isFinalActivation());
     }
@@ -178,6 +224,59 @@ public class Document implements Comparable<Document> {
     }
 
 
+    /**
+     * Creates a batch of input activations. All the input activations of the batch are registered first and are
+     * then propagated through the network at once, instead of draining the queues after every single input.
+     *
+     * @return
+     */
+    public InputBatch createInputBatch() {
+        return new InputBatch();
+    }
+
+
+    public class InputBatch {
+        private List<Neuron> neurons = new ArrayList<>();
+        private List<Activation.Builder> inputs = new ArrayList<>();
+
+
+        public InputBatch add(Neuron n, int begin, int end) {
+            return add(n, new Activation.Builder().setRange(begin, end));
+        }
+
+
+        public InputBatch add(Neuron n, Range r) {
+            return add(n, new Activation.Builder().setRange(r));
+        }
+
+
+        public InputBatch add(Neuron n, Activation.Builder input) {
+            neurons.add(n);
+            inputs.add(input);
+            return this;
+        }
+
+
+        /**
+         * Registers all the input activations of this batch and propagates them through the network.
+         *
+         * @return The input activations in the order in which they have been added to the batch.
+         */
+        public List<Activation> process() {
+            List<Activation> results = new ArrayList<>(inputs.size());
+            for(int i = 0; i < inputs.size(); i++) {
+                results.add(neurons.get(i).get(Document.this).registerInput(Document.this, inputs.get(i)));
+            }
+            neurons.clear();
+            inputs.clear();
+
+            propagate();
+
+            return results;
+        }
+    }
+
+
     public void propagate() {
         for(Node n: addedNodes) {
             n.reprocessInputs(this);
@@ -192,15 +291,24 @@ public class Document implements Comparable<Document> {
     }
 
 
+    /**
+     * Creates the search candidates and sorts them topologically with respect to the non-recurrent input links of
+     * their activations. Among the candidates whose dependencies are satisfied, the order given by
+     * {@code Candidate.compareTo} is used.
+     */
     public void generateCandidates() {
-        TreeSet<Candidate> tmp = new TreeSet<>();
+        List<Candidate> tmp = new ArrayList<>();
         int i = 0;
 
-        if(!INCREMENTAL_MODE) {
+        if(isIncremental()) {
+            for(Candidate c: freezeCandidates()) {
+                tmp.add(new Candidate(c.activation, i++));
+            }
+        } else {
             candidates.clear();
         }
 
-        for(Activation act: INCREMENTAL_MODE ? addedActivations: activationsByRangeBegin.values()) {
+        for(Activation act: isIncremental() ? addedActivations: activationsByRangeBegin.values()) {
             if (act.decision == UNKNOWN && act.upperBound > 0.0) {
                 SearchNode.invalidateCachedDecision(act);
                 tmp.add(new Candidate(act, i++));
@@ -208,28 +316,185 @@ public class Document implements Comparable<Document> {
         }
 
         long v = visitedCounter++;
+        long vTmp = visitedCounter++;
+        for(Candidate c: tmp) {
+            c.activation.markedHasCandidate = vTmp;
+        }
         for(Activation act: inputNeuronActivations) {
             act.markedHasCandidate = v;
         }
+        for(Candidate c: candidates) {
+            c.activation.markedHasCandidate = v;
+        }
+
+        // The candidates are indexed by their initial id until they are added to the candidates list.
+        int[] numberOfDependencies = new int[tmp.size()];
+        List<Candidate>[] dependents = new List[tmp.size()];
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        for(Candidate c: tmp) {
+            for(Activation.Link l: c.activation.neuronInputs.values()) {
+                Activation iAct = l.input;
+                if(l.synapse.key.isRecurrent || iAct.upperBound <= 0.0 || iAct.markedHasCandidate == v) continue;
+
+                // Dependencies on activations without a candidate can never be satisfied.
+                numberOfDependencies[c.id]++;
+                if(iAct.markedHasCandidate == vTmp) {
+                    int iid = iAct.candidate.id;
+                    if(dependents[iid] == null) {
+                        dependents[iid] = new ArrayList<>();
+                    }
+                    dependents[iid].add(c);
+                }
+            }
+            if(numberOfDependencies[c.id] == 0) {
+                queue.add(c);
+            }
+        }
 
-        while (!tmp.isEmpty()) {
-            int oldSize = tmp.size();
-            for (Candidate c : tmp) {
-                if (c.checkDependenciesSatisfied(v)) {
-                    tmp.remove(c);
-                    c.id = candidates.size();
-                    candidates.add(c);
+        int numberOfCandidates = candidates.size() + tmp.size();
+        while (!queue.isEmpty()) {
+            Candidate c = queue.poll();
+            List<Candidate> deps = dependents[c.id];
 
-                    c.activation.markedHasCandidate = v;
-                    break;
+            c.id = candidates.size();
+            candidates.add(c);
+            c.activation.markedHasCandidate = v;
+
+            if(deps != null) {
+                for(Candidate dc: deps) {
+                    if(--numberOfDependencies[dc.id] == 0) {
+                        queue.add(dc);
+                    }
                 }
             }
+        }
 
-            if(tmp.size() == oldSize) {
-                log.error("Cycle detected in the activations that is not marked recurrent.");
+        if(candidates.size() != numberOfCandidates) {
+            StringBuilder sb = new StringBuilder();
+            for(Candidate c: tmp) {
+                if(c.activation.markedHasCandidate != v) {
+                    Activation act = c.activation;
+                    sb.append(" " + act.id + ":" + act.getLabel() + " " + act.range);
+                }
+            }
+            log.error("Cycle detected in the activations that is not marked recurrent:" + sb);
+
+            throw new RuntimeException("Cycle detected in the activations that is not marked recurrent:" + sb);
+        }
+
+        computeConflictGraph();
+    }
 
-                throw new RuntimeException("Cycle detected in the activations that is not marked recurrent.");
+
+    /**
+     * Materializes the conflicts between the candidates as sorted arrays of candidate ids, so that the search does
+     * not need to iterate over the conflicting activations. Conflicting activations that are not part of the search
+     * keep their decision throughout the search and are therefore evaluated only once.
+     */
+    private void computeConflictGraph() {
+        selectedCandidates = new BitSet(candidates.size());
+        for(Candidate c: candidates) {
+            if(c.activation.decision == Decision.SELECTED) {
+                selectedCandidates.set(c.id);
+            }
+        }
+
+        for(Candidate c: candidates) {
+            Collection<Activation> conflicts = c.activation.getConflicts();
+            int[] ids = new int[conflicts.size()];
+            int n = 0;
+            c.fixedConflictSelected = false;
+            for(Activation cAct: conflicts) {
+                if(isCandidate(cAct.candidate)) {
+                    ids[n++] = cAct.candidate.id;
+                } else if(cAct.decision == Decision.SELECTED) {
+                    c.fixedConflictSelected = true;
+                }
             }
+            ids = n < ids.length ? Arrays.copyOf(ids, n) : ids;
+            Arrays.sort(ids);
+            c.conflicts = ids;
+        }
+    }
+
+
+    public boolean isCandidate(Candidate c) {
+        return c != null && c.id < candidates.size() && candidates.get(c.id) == c;
+    }
+
+
+    public void updateSelectedCandidate(Candidate c, boolean selected) {
+        if(isCandidate(c)) {
+            selectedCandidates.set(c.id, selected);
+        }
+    }
+
+
+    /**
+     * Keeps the final decisions of the previously searched candidates, except for those that might be affected by
+     * one of the newly added activations. These are the candidates that are linked to or in conflict with a newly
+     * added activation, and transitively all the candidates that are reachable from them through output links or
+     * conflicts, since a changed decision propagates along these edges. The frozen candidates remain at the
+     * beginning of the candidates list.
+     *
+     * @return The previous candidates that need to be searched again.
+     */
+    private List<Candidate> freezeCandidates() {
+        for(int i = 0; i < numberOfFrozenCandidates; i++) {
+            Activation act = candidates.get(i).activation;
+            act.setDecision(UNKNOWN, frozenV);
+            act.rounds.reset();
+        }
+
+        ArrayDeque<Activation> queue = new ArrayDeque<>();
+        for(Activation act: addedActivations) {
+            queue.add(act);
+            for(Activation.Link l: act.neuronInputs.values()) {
+                queue.add(l.input);
+            }
+        }
+
+        Set<Candidate> affected = new HashSet<>();
+        Set<Activation> visitedActs = new TreeSet<>(Activation.ACTIVATION_ID_COMP);
+        while(!queue.isEmpty()) {
+            Activation act = queue.poll();
+            if(!visitedActs.add(act)) continue;
+
+            addAffected(affected, act);
+            for(Activation.Link l: act.neuronOutputs) {
+                queue.add(l.output);
+            }
+            queue.addAll(act.getConflicts());
+        }
+
+        List<Candidate> oldCandidates = new ArrayList<>(candidates);
+        List<Candidate> results = new ArrayList<>();
+        candidates.clear();
+        frozenV = visitedCounter++;
+        for(Candidate c: oldCandidates) {
+            Activation act = c.activation;
+            if(affected.contains(c)) {
+                results.add(c);
+            } else {
+                c.id = candidates.size();
+                candidates.add(c);
+                act.setDecision(act.finalDecision, frozenV);
+                act.rounds = act.finalRounds.copy();
+
+                // A frozen candidate is never searched again.
+                c.cachedSearchNode = null;
+                c.currentSearchNode = null;
+                c.bestChildNode = null;
+            }
+        }
+        numberOfFrozenCandidates = candidates.size();
+        return results;
+    }
+
+
+    private void addAffected(Set<Candidate> affected, Activation act) {
+        if(act.candidate != null && act.candidate.id < candidates.size() && candidates.get(act.candidate.id) == act.candidate) {
+            affected.add(act.candidate);
         }
     }
 
@@ -239,30 +504,112 @@ public class Document implements Comparable<Document> {
      * network. It performs the search for the best interpretation.
      */
     public void process() {
-        process(null);
+        process(new SearchNode.Config());
+    }
+
+
+    public void process(Long timeoutInMilliSeconds) {
+        process(new SearchNode.Config().setTimeout(timeoutInMilliSeconds));
     }
 
 
-    public void process(Long timeoutInMilliSeconds) throws SearchNode.TimeoutException {
-        linker.lateLinking();
+    public void process(SearchNode.Config searchConfig) {
+        if(isIncremental()) {
+            linker.lateLinking(addedActivations);
+
+            for(Activation act: addedActivations) {
+                if(inputNeuronActivations.contains(act)) {
+                    vQueue.propagateActivationValue(0, act);
+                }
+            }
+        } else {
+            linker.lateLinking();
 
-        inputNeuronActivations.forEach(act -> vQueue.propagateActivationValue(0, act));
+            inputNeuronActivations.forEach(act -> vQueue.propagateActivationValue(0, act));
+        }
 
         generateCandidates();
 
         addedActivations.clear();
 
-        if(selectedSearchNode == null || !INCREMENTAL_MODE) {
-            selectedSearchNode = new SearchNode(this, null, null, 0);
+        selectedSearchNode = new SearchNode(this, null, null, isIncremental() ? numberOfFrozenCandidates : 0);
+
+        DecisionCache dc = model.decisionCache;
+        List<DecisionCache.Component> components = dc != null ? dc.apply(this) : null;
+
+        approximateInterpretation = false;
+        try {
+            SearchNode.search(this, selectedSearchNode, visitedCounter++, searchConfig);
+        } finally {
+            // The memoized decisions must not remain on the activations, even if the search has failed.
+            if(dc != null) {
+                dc.reset(components);
+            }
         }
 
-        SearchNode.search(this, selectedSearchNode, visitedCounter++, timeoutInMilliSeconds);
+        if(dc != null) {
+            dc.store(this, components);
+        }
 
         for(Activation act: activationsByRangeBegin.values()) {
             if(act.isFinalActivation()) {
                 finallyActivatedNeurons.add(act.getINeuron());
             }
         }
+
+        if(TRACK_PEAK_SIZE) {
+            updatePeakEstimatedSize();
+        }
+    }
+
+
+    /**
+     * Estimates the number of bytes retained by this document, including all the activations of the neurons and
+     * logic nodes and the search candidates.
+     *
+     * @return
+     */
+    public long estimateSize() {
+        long size = MemoryEstimator.shallowSize(getClass());
+        size += MemoryEstimator.string(content);
+
+        size += MemoryEstimator.treeMap(activationsByRangeBegin);
+        size += MemoryEstimator.treeMap(activationsByRangeEnd);
+        size += activationsByRangeBegin.size() * MemoryEstimator.shallowSize(ActKey.class);
+        for(Activation act: activationsByRangeBegin.values()) {
+            size += act.estimateSize();
+        }
+
+        for(Node n: activatedNodes) {
+            ThreadState th = n.threads[threadId];
+            // The activations of the or-nodes have already been accounted for above.
+            if(th != null && !(n instanceof OrNode)) {
+                for(Object act: th.activations) {
+                    size += ((NodeActivation) act).estimateSize();
+                }
+            }
+        }
+
+        size += MemoryEstimator.treeSet(activatedNodes);
+        size += MemoryEstimator.treeSet(activatedNeurons);
+        size += MemoryEstimator.treeSet(finallyActivatedNeurons);
+        size += MemoryEstimator.treeSet(inputNeuronActivations);
+        size += MemoryEstimator.treeMap(modifiedWeights);
+        for(Set<Synapse> syns: modifiedWeights.values()) {
+            size += MemoryEstimator.treeSet(syns);
+        }
+        size += MemoryEstimator.treeSet(addedNodes);
+        size += MemoryEstimator.arrayList(addedNodeActivations);
+        size += MemoryEstimator.arrayList(addedActivations);
+        size += MemoryEstimator.arrayList(candidates);
+
+        return size;
+    }
+
+
+    public void updatePeakEstimatedSize() {
+        peakEstimatedSize = Math.max(peakEstimatedSize, estimateSize());
+        model.updatePeakDocumentSize(peakEstimatedSize);
     }
 
 
@@ -297,6 +644,10 @@ public class Document implements Comparable<Document> {
      * Removes the activations of this document from the model again.
      */
     public void clearActivations() {
+        if(TRACK_PEAK_SIZE) {
+            updatePeakEstimatedSize();
+        }
+
         activatedNeurons.forEach(n -> n.clearActivations(this));
         activatedNodes.forEach(n -> n.clearActivations(this));
 
@@ -309,21 +660,7 @@ public class Document implements Comparable<Document> {
         if(model.lastCleanup[threadId] + CLEANUP_INTERVAL < id) {
             model.lastCleanup[threadId] = id;
 
-            List<Provider<? extends AbstractNode>> tmp;
-            synchronized(model.activeProviders) {
-                tmp = new ArrayList<>(model.activeProviders.values());
-            }
-
-            tmp.forEach(np -> {
-                AbstractNode an = np.getIfNotSuspended();
-                if (an != null && an instanceof Node) {
-                    Node n = (Node) an;
-                    Node.ThreadState th = n.threads[threadId];
-                    if (th != null && th.lastUsed + CLEANUP_INTERVAL < id) {
-                        n.threads[threadId] = null;
-                    }
-                }
-            });
+            Node.removeStaleThreadStates(model, threadId, id - CLEANUP_INTERVAL);
         }
 
         model.docs[threadId] = null;
@@ -401,17 +738,8 @@ public class Document implements Comparable<Document> {
 
     public class Queue {
 
-        public final TreeSet<Node> queue = new TreeSet<>(new Comparator<Node>() {
-            @Override
-            public int compare(Node n1, Node n2) {
-                int r = Integer.compare(n1.level, n2.level);
-                if(r != 0) return r;
-
-                ThreadState th1 = n1.getThreadState(threadId, true);
-                ThreadState th2 = n2.getThreadState(threadId, true);
-                return Long.compare(th1.queueId, th2.queueId);
-            }
-        });
+        // The nodes are processed by their level and within a level in the order in which they have been queued.
+        public final BucketQueue<Node> queue = new BucketQueue<>(n -> n.level, 1, () -> new ArrayDeque<>());
 
         private long queueIdCounter = 0;
 
@@ -429,7 +757,7 @@ public class Document implements Comparable<Document> {
 
         public void processChanges() {
             while(!queue.isEmpty()) {
-                Node n = queue.pollFirst();
+                Node n = queue.poll();
                 ThreadState th = n.getThreadState(threadId, true);
 
                 th.isQueued = false;
@@ -471,15 +799,12 @@ public class Document implements Comparable<Document> {
     }
 
 
-    private static Comparator<Activation> VALUE_QUEUE_COMP = (a, b) -> {
-        int r = Integer.compare(a.getSequence(), b.getSequence());
-        if(r != 0) return r;
-        return Integer.compare(a.id, b.id);
-    };
+    private static Comparator<Activation> VALUE_QUEUE_COMP = (a, b) -> Integer.compare(a.id, b.id);
 
 
     public class ValueQueue {
-        public final ArrayList<TreeSet<Activation>> queue = new ArrayList<>();
+        // One queue per round, ordered by the sequence and the id of the activations.
+        public final ArrayList<BucketQueue<Activation>> queue = new ArrayList<>();
 
         public void propagateActivationValue(int round, Activation act)  {
             for(Activation.Link l: act.neuronOutputs) {
@@ -502,12 +827,12 @@ public class Document implements Comparable<Document> {
         public void add(int round, Activation act) {
             if(act.rounds.isQueued(round) || act.decision == Decision.UNKNOWN) return;
 
-            TreeSet<Activation> q;
+            BucketQueue<Activation> q;
             if(round < queue.size()) {
                 q = queue.get(round);
             } else {
                 assert round == queue.size();
-                q = new TreeSet<>(VALUE_QUEUE_COMP);
+                q = new BucketQueue<>(a -> a.getSequence(), 0, () -> new PriorityQueue<>(VALUE_QUEUE_COMP));
                 queue.add(q);
             }
 
@@ -525,9 +850,9 @@ public class Document implements Comparable<Document> {
 
             double delta = 0.0;
             for(int round = 0; round < queue.size(); round++) {
-                TreeSet<Activation> q = queue.get(round);
+                BucketQueue<Activation> q = queue.get(round);
                 while (!q.isEmpty()) {
-                    Activation act = q.pollFirst();
+                    Activation act = q.poll();
                     act.rounds.setQueued(round, false);
 
                     delta += act.process(sn, round, v);
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika;
+
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Map;
+
+
+/**
+ * The {@code MemoryEstimator} contains the size constants and helper functions used by the {@code estimateSize()}
+ * methods of the neurons, logic nodes, synapses, activations and documents. The estimates assume a 64-bit JVM with
+ * compressed object pointers and 8 byte object alignment. They are computed from the data structures themselves and
+ * are therefore approximations, but they are cheap and do not require an external profiler.
+ *
+ * @author Lukas Molzberger
+ */
+public class MemoryEstimator {
+
+    public static final int OBJECT_HEADER = 12;
+    public static final int ARRAY_HEADER = 16;
+    public static final int REFERENCE = 4;
+
+    public static final int BOXED_NUMBER = 16;
+    public static final int TREE_MAP = 48;
+    public static final int TREE_MAP_ENTRY = 40;
+    public static final int ARRAY_LIST = 24;
+    public static final int READ_WRITE_LOCK = 64;
+    public static final int ATOMIC_INTEGER = 16;
+
+
+    private static final ClassValue<Long> SHALLOW_SIZES = new ClassValue<Long>() {
+        @Override
+        protected Long computeValue(Class<?> c) {
+            int size = OBJECT_HEADER;
+            for(Class<?> cl = c; cl != null; cl = cl.getSuperclass()) {
+                for(Field f: cl.getDeclaredFields()) {
+                    if(!Modifier.isStatic(f.getModifiers())) {
+                        size += fieldSize(f.getType());
+                    }
+                }
+            }
+            return align(size);
+        }
+    };
+
+
+    public static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+
+    /**
+     * Estimates the shallow size of an object.
+     *
+     * @param references The number of reference fields.
+     * @param primitiveBytes The number of bytes used by the primitive fields.
+     * @return
+     */
+    public static long object(int references, int primitiveBytes) {
+        return align(OBJECT_HEADER + references * REFERENCE + primitiveBytes);
+    }
+
+
+    /**
+     * Estimates the shallow size of an instance of the given class from its instance fields, including the
+     * inherited ones and the reference to the enclosing instance of inner classes. The result is computed by
+     * reflection once per class, so that it remains correct when fields are added or removed.
+     *
+     * @param c
+     * @return
+     */
+    public static long shallowSize(Class<?> c) {
+        return SHALLOW_SIZES.get(c);
+    }
+
+
+    static int fieldSize(Class<?> type) {
+        if(!type.isPrimitive()) return REFERENCE;
+        if(type == long.class || type == double.class) return 8;
+        if(type == int.class || type == float.class) return 4;
+        if(type == short.class || type == char.class) return 2;
+        return 1;
+    }
+
+
+    public static long array(int length, int elementSize) {
+        return align(ARRAY_HEADER + (long) length * elementSize);
+    }
+
+
+    public static long treeMap(int size) {
+        return TREE_MAP + (long) size * TREE_MAP_ENTRY;
+    }
+
+
+    public static long treeMap(Map<?, ?> m) {
+        return m != null ? treeMap(m.size()) : 0;
+    }
+
+
+    public static long treeSet(Collection<?> s) {
+        return s != null ? object(1, 0) + treeMap(s.size()) : 0;
+    }
+
+
+    public static long arrayList(Collection<?> l) {
+        return l != null ? ARRAY_LIST + array(l.size(), REFERENCE) : 0;
+    }
+
+
+    public static long string(String s) {
+        return s != null ? object(1, 8) + array(s.length(), 2) : 0;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika;
+
+
+import java.util.*;
+
+
+/**
+ * The {@code MemoryReport} summarizes the estimated heap usage of the neurons and logic nodes that are currently
+ * loaded in the model and of the documents that are currently being processed. It is created by
+ * {@code Model.createMemoryReport}.
+ *
+ * @author Lukas Molzberger
+ */
+public class MemoryReport {
+
+    /**
+     * The largest neurons and logic nodes, in descending order of their estimated size.
+     */
+    public List<Entry> largestNodes = new ArrayList<>();
+
+    // node kind -> estimated size
+    public TreeMap<String, Long> sizeByKind = new TreeMap<>();
+    // node kind -> number of loaded nodes
+    public TreeMap<String, Integer> countByKind = new TreeMap<>();
+
+    public long totalNodeSize;
+
+    public List<DocumentEntry> documents = new ArrayList<>();
+
+    /**
+     * The largest peak size of all the documents that have been processed so far. Only recorded if
+     * {@code Document.TRACK_PEAK_SIZE} is enabled.
+     */
+    public long peakDocumentSize;
+
+    /**
+     * The size of a document that is owned by another thread.
+     */
+    public static final long NOT_ESTIMATED = -1;
+
+
+    public static class Entry {
+        public final int id;
+        public final String kind;
+        public final String label;
+        public final long size;
+
+        public Entry(int id, String kind, String label, long size) {
+            this.id = id;
+            this.kind = kind;
+            this.label = label;
+            this.size = size;
+        }
+
+        public String toString() {
+            return kind + " " + id + (label != null ? " " + label : "") + ": " + size;
+        }
+    }
+
+
+    public static class DocumentEntry {
+        public final int id;
+        public final int threadId;
+        public final long size;
+        public final long peakSize;
+
+        public DocumentEntry(int id, int threadId, long size, long peakSize) {
+            this.id = id;
+            this.threadId = threadId;
+            this.size = size;
+            this.peakSize = peakSize;
+        }
+
+        public String toString() {
+            return "Document " + id + " (thread " + threadId + "): " + (size != NOT_ESTIMATED ? size : "-") + " peak: " + peakSize;
+        }
+    }
+
+
+    void addNode(Entry e) {
+        totalNodeSize += e.size;
+        sizeByKind.merge(e.kind, e.size, Long::sum);
+        countByKind.merge(e.kind, 1, Integer::sum);
+    }
+
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Total node size: " + totalNodeSize + "\n");
+        for(Map.Entry<String, Long> me: sizeByKind.entrySet()) {
+            sb.append("  " + me.getKey() + " (" + countByKind.get(me.getKey()) + "): " + me.getValue() + "\n");
+        }
+        sb.append("Largest nodes:\n");
+        for(Entry e: largestNodes) {
+            sb.append("  " + e + "\n");
+        }
+        sb.append("Documents:\n");
+        for(DocumentEntry de: documents) {
+            sb.append("  " + de + "\n");
+        }
+        sb.append("Peak document size: " + peakDocumentSize + "\n");
+        return sb.toString();
+    }
+}
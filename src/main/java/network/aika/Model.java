@@ -18,15 +18,18 @@ package network.aika;
 
 
 import network.aika.lattice.InputNode;
+import network.aika.lattice.LatticeStatistics;
 import network.aika.lattice.Node;
 import network.aika.neuron.INeuron;
 import network.aika.neuron.Neuron;
+import network.aika.neuron.activation.Activation;
 import network.aika.Provider.SuspensionMode;
 
 import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 
 /**
@@ -47,8 +50,18 @@ public class Model {
 
     public Document[] docs;
 
+    // The heads of the per thread lists of logic node thread states. Each list is only accessed by the document that
+    // is registered for its thread id in docs.
+    public Node.ThreadState[] threadStates;
+
     public SuspensionHook suspensionHook;
 
+    // Memoizes the search decisions of repeated components across documents, disabled if null.
+    public DecisionCache decisionCache;
+
+    // If set, the training deltas are accumulated in per thread stripes, so that several documents can be trained concurrently.
+    public volatile boolean concurrentTraining;
+
     public StatisticFactory nodeStatisticFactory;
     public StatisticFactory neuronStatisticFactory;
 
@@ -62,6 +75,8 @@ public class Model {
 
     public int defaultThreadId = 0;
 
+    public volatile long peakDocumentSize;
+
 
     public static AtomicLong visitedCounter = new AtomicLong(1);
 
@@ -80,6 +95,7 @@ public class Model {
 
         lastCleanup = new int[numberOfThreads];
         docs = new Document[numberOfThreads];
+        threadStates = new Node.ThreadState[numberOfThreads];
         suspensionHook = sh;
     }
 
@@ -94,6 +110,16 @@ public class Model {
     }
 
 
+    public DecisionCache getDecisionCache() {
+        return decisionCache;
+    }
+
+
+    public void setDecisionCache(DecisionCache decisionCache) {
+        this.decisionCache = decisionCache;
+    }
+
+
     public StatisticFactory getNodeStatisticFactory() {
         return nodeStatisticFactory;
     }
@@ -152,6 +178,26 @@ public class Model {
     }
 
 
+    /**
+     * Creates a document for an unbounded text that is processed in chunks.
+     *
+     * @param threadId
+     * @param maxRelationReach The maximum distance between the end of an activation and the positions of the inputs it may still be related to.
+     * @param callback Receives the final activations once they are no longer affected by new input.
+     * @return
+     */
+    public StreamingDocument createStreamingDocument(int threadId, int maxRelationReach, Consumer<Activation> callback) {
+        StreamingDocument doc = new StreamingDocument(docIdCounter.addAndGet(1), this, threadId, maxRelationReach, callback);
+
+        if (docs[threadId] != null) {
+            throw new RuntimeException("Two documents are using the same thread. Call clearActivations() first, before processing the next document.");
+        }
+        docs[threadId] = doc;
+
+        return doc;
+    }
+
+
     public <P extends Provider<? extends Node>> P lookupNodeProvider(int id) {
         synchronized (providers) {
             WeakReference<Provider<? extends AbstractNode>> wr = providers.get(id);
@@ -242,6 +288,89 @@ public class Model {
         return false;
     }
 
+    /**
+     * Creates a report of the estimated heap usage of the neurons and logic nodes that are currently loaded and of
+     * the documents that are currently being processed. Suspended nodes are not included.
+     *
+     * @param topN The number of largest nodes that should be listed in the report.
+     * @return
+     */
+    public MemoryReport createMemoryReport(int topN) {
+        return createMemoryReport(topN, null);
+    }
+
+
+    /**
+     * Creates a memory report. The documents are owned by the threads that process them and cannot be traversed
+     * safely by other threads. Therefore only the current size of the given document of the calling thread is
+     * estimated, whereas the other documents are reported with the peak size recorded by their own threads.
+     *
+     * @param topN The number of largest nodes that should be listed in the report.
+     * @param ownDoc The document of the calling thread or null.
+     * @return
+     */
+    public MemoryReport createMemoryReport(int topN, Document ownDoc) {
+        MemoryReport report = new MemoryReport();
+
+        List<Provider<? extends AbstractNode>> tmp;
+        synchronized (activeProviders) {
+            tmp = new ArrayList<>(activeProviders.values());
+        }
+
+        PriorityQueue<MemoryReport.Entry> largest = new PriorityQueue<>(Comparator.comparingLong(e -> e.size));
+        for(Provider<? extends AbstractNode> p: tmp) {
+            AbstractNode an = p.getIfNotSuspended();
+            if(an == null) continue;
+
+            MemoryReport.Entry e = new MemoryReport.Entry(
+                    p.id,
+                    an.getClass().getSimpleName(),
+                    an instanceof INeuron ? ((INeuron) an).label : null,
+                    an.estimateSize()
+            );
+            report.addNode(e);
+
+            if(topN > 0) {
+                largest.add(e);
+                if(largest.size() > topN) {
+                    largest.poll();
+                }
+            }
+        }
+
+        while(!largest.isEmpty()) {
+            report.largestNodes.add(largest.poll());
+        }
+        Collections.reverse(report.largestNodes);
+
+        for(Document doc: docs) {
+            if(doc != null) {
+                long size = doc == ownDoc ? doc.estimateSize() : MemoryReport.NOT_ESTIMATED;
+                report.documents.add(new MemoryReport.DocumentEntry(doc.id, doc.threadId, size, doc.peakEstimatedSize));
+            }
+        }
+        report.peakDocumentSize = peakDocumentSize;
+
+        return report;
+    }
+
+
+    /**
+     * Computes the shape statistics of the pattern lattice, including the suspended logic nodes.
+     *
+     * @param topN The number of nodes with the largest number of and-children that should be listed.
+     * @return
+     */
+    public LatticeStatistics createLatticeStatistics(int topN) {
+        return LatticeStatistics.compute(this, topN);
+    }
+
+
+    synchronized void updatePeakDocumentSize(long size) {
+        peakDocumentSize = Math.max(peakDocumentSize, size);
+    }
+
+
     public void removeProvider(Provider p) {
         synchronized (activeProviders) {
             activeProviders.remove(p.id);
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika;
+
+
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * The {@code ModelBuilder} initializes a large number of neurons at once. In contrast to {@code Neuron.init}, which
+ * converts each neuron into the pattern lattice right away, the builder first creates and links the synapses of all
+ * the neurons and then compiles the lattice in a single pass on several threads.
+ *
+ * <p>The neurons are grouped by the input neuron of their strongest conjunctive synapse, which is where the
+ * conversion of a neuron usually starts. Each group is converted by a single thread, so that the neurons of a group
+ * share the lattice prefixes created by their predecessors instead of competing for the locks of the same nodes.
+ * The resulting lattice contains the same nodes as if the neurons had been initialized one after another.
+ *
+ * @author Lukas Molzberger
+ */
+public class ModelBuilder {
+
+    private Model model;
+    private List<Definition> definitions = new ArrayList<>();
+
+
+    private static class Definition {
+        Neuron neuron;
+        double bias;
+        ActivationFunction activationFunction;
+        INeuron.Type type;
+        List<Synapse.Builder> inputs;
+
+        List<Synapse> synapses;
+        boolean result;
+    }
+
+
+    public ModelBuilder(Model model) {
+        this.model = model;
+    }
+
+
+    public ModelBuilder add(Neuron n, double bias, INeuron.Type type, Synapse.Builder... inputs) {
+        return add(n, bias, null, type, new ArrayList<>(Arrays.asList(inputs)));
+    }
+
+
+    public ModelBuilder add(Neuron n, double bias, ActivationFunction activationFunction, INeuron.Type type, Synapse.Builder... inputs) {
+        return add(n, bias, activationFunction, type, new ArrayList<>(Arrays.asList(inputs)));
+    }
+
+
+    public ModelBuilder add(Neuron n, double bias, ActivationFunction activationFunction, INeuron.Type type, List<Synapse.Builder> inputs) {
+        Definition d = new Definition();
+        d.neuron = n;
+        d.bias = bias;
+        d.activationFunction = activationFunction;
+        d.type = type;
+        d.inputs = inputs;
+        definitions.add(d);
+        return this;
+    }
+
+
+    public int size() {
+        return definitions.size();
+    }
+
+
+    /**
+     * Initializes all the added neurons.
+     *
+     * @param numberOfThreads The number of threads used to compile the lattice. It is limited by the number of
+     *                        threads of the model, since each thread uses its own thread id.
+     * @return The initialized neurons in the order in which they have been added. Like {@code Neuron.init}, the
+     * entry is null if the neuron can never become active.
+     */
+    public List<Neuron> build(int numberOfThreads) {
+        for(Definition d: definitions) {
+            d.synapses = d.neuron.prepareInit(null, d.activationFunction, d.type, d.inputs);
+            INeuron.prepareUpdate(d.neuron, d.bias, d.synapses);
+        }
+
+        List<List<Definition>> groups = computeGroups();
+
+        AtomicInteger nextGroup = new AtomicInteger(0);
+        int n = Math.max(1, Math.min(numberOfThreads, model.numberOfThreads));
+        Thread[] threads = new Thread[n];
+        RuntimeException[] exceptions = new RuntimeException[n];
+        for(int i = 0; i < n; i++) {
+            int threadId = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int j = nextGroup.getAndIncrement(); j < groups.size(); j = nextGroup.getAndIncrement()) {
+                        for (Definition d : groups.get(j)) {
+                            d.result = Converter.convert(threadId, null, d.neuron.get(), d.synapses);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    exceptions[threadId] = e;
+                }
+            });
+            threads[i].start();
+        }
+
+        for(int i = 0; i < n; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            if(exceptions[i] != null) {
+                throw exceptions[i];
+            }
+        }
+
+        List<Neuron> results = new ArrayList<>();
+        for(Definition d: definitions) {
+            results.add(d.result ? d.neuron : null);
+        }
+        definitions.clear();
+        return results;
+    }
+
+
+    private List<List<Definition>> computeGroups() {
+        TreeMap<Integer, List<Definition>> groups = new TreeMap<>();
+        for(Definition d: definitions) {
+            Synapse maxSyn = null;
+            for(Synapse s: d.synapses) {
+                if(!s.isNegative() && !s.key.isRecurrent && (maxSyn == null || s.getNewWeight() > maxSyn.getNewWeight())) {
+                    maxSyn = s;
+                }
+            }
+            groups.computeIfAbsent(maxSyn != null ? maxSyn.input.id : -1, id -> new ArrayList<>()).add(d);
+        }
+        return new ArrayList<>(groups.values());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika;
+
+
+import network.aika.lattice.Node;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.activation.Activation;
+import network.aika.neuron.activation.Candidate;
+import network.aika.neuron.activation.Range;
+import network.aika.neuron.activation.SearchNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+/**
+ * The {@code StreamingDocument} processes an unbounded text in chunks. The text and the input activations of each
+ * chunk are appended to the document and then processed incrementally. Once the end of the text has advanced more
+ * than {@code maxRelationReach} characters past the end of an activation, no new input can affect it anymore. Such
+ * activations are retired: the final ones are passed to the callback and then all of them are evicted from the
+ * document together with their logic node activations, links, candidates and the text before them. Therefore the
+ * memory usage only depends on the size of the window and not on the length of the whole text.
+ *
+ * <p>All ranges are absolute positions in the whole text.
+ *
+ * @author Lukas Molzberger
+ */
+public class StreamingDocument extends Document {
+
+    public int maxRelationReach;
+    public Consumer<Activation> callback;
+
+    private StringBuilder text = new StringBuilder();
+    // The absolute position of the first character of the text window.
+    private int textOffset;
+
+    public int numberOfRetiredActivations;
+
+
+    public StreamingDocument(int id, Model model, int threadId, int maxRelationReach, Consumer<Activation> callback) {
+        super(id, null, model, threadId);
+        this.maxRelationReach = maxRelationReach;
+        this.callback = callback;
+    }
+
+
+    /**
+     * Appends the next chunk of the text.
+     *
+     * @param chunk
+     * @return The absolute position of the beginning of the chunk.
+     */
+    public int appendText(String chunk) {
+        int begin = length();
+        text.append(chunk);
+        return begin;
+    }
+
+
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+
+    @Override
+    public String getContent() {
+        return text.toString();
+    }
+
+
+    @Override
+    public int length() {
+        return textOffset + text.length();
+    }
+
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+
+    @Override
+    public String getText(Range r) {
+        return text.substring(
+                Math.max(0, Math.min(r.begin - textOffset, text.length())),
+                Math.max(0, Math.min(r.end - textOffset, text.length()))
+        );
+    }
+
+
+    /**
+     * Processes the chunks that have been appended since the last call and retires the activations that are out of
+     * reach of any further input.
+     *
+     * @param searchConfig
+     */
+    @Override
+    public void process(SearchNode.Config searchConfig) {
+        super.process(searchConfig);
+
+        retireActivations(length() - maxRelationReach);
+    }
+
+
+    /**
+     * Retires all the remaining activations and removes the document from the model.
+     */
+    public void finish() {
+        retireActivations(Integer.MAX_VALUE);
+        clearActivations();
+    }
+
+
+    private void retireActivations(int pos) {
+        List<Activation> retired = new ArrayList<>();
+        for(Activation act: activationsByRangeEnd.values()) {
+            if(!act.endsBefore(pos)) break;
+            retired.add(act);
+        }
+        if(pos == Integer.MAX_VALUE) {
+            retired.clear();
+            retired.addAll(activationsByRangeBegin.values());
+        }
+        if(retired.isEmpty()) {
+            return;
+        }
+
+        retired.sort(ACTIVATIONS_OUTPUT_COMPARATOR);
+
+        long v = visitedCounter++;
+        for(Activation act: retired) {
+            act.retire(v);
+
+            if(callback != null && act.isFinalActivation()) {
+                callback.accept(act);
+            }
+        }
+
+        removeRetiredCandidates();
+
+        for(Activation act: retired) {
+            ActKey ak = new ActKey(act.range, act.node, act.id);
+            activationsByRangeBegin.remove(ak);
+            activationsByRangeEnd.remove(ak);
+            inputNeuronActivations.remove(act);
+        }
+        numberOfRetiredActivations += retired.size();
+
+        for(INeuron n: activatedNeurons) {
+            n.removeActivationsBefore(this, pos);
+        }
+        for(Node n: activatedNodes) {
+            n.removeActivationsBefore(this, pos);
+        }
+
+        int newOffset = Math.min(length(), pos);
+        if(!activationsByRangeBegin.isEmpty()) {
+            newOffset = Math.min(newOffset, Math.max(textOffset, activationsByRangeBegin.firstKey().range.begin));
+        }
+        text.delete(0, newOffset - textOffset);
+        textOffset = newOffset;
+    }
+
+
+    /**
+     * Removes the candidates of the retired activations, which have already been detached from their activations.
+     * The remaining frozen candidates stay at the beginning of the candidates list.
+     */
+    private void removeRetiredCandidates() {
+        List<Candidate> oldCandidates = new ArrayList<>(candidates);
+        int oldNumberOfFrozenCandidates = numberOfFrozenCandidates;
+
+        candidates.clear();
+        numberOfFrozenCandidates = 0;
+        for(Candidate c: oldCandidates) {
+            if(c.activation.candidate == c) {
+                if(c.id < oldNumberOfFrozenCandidates) {
+                    numberOfFrozenCandidates++;
+                }
+                c.id = candidates.size();
+                candidates.add(c);
+            }
+        }
+    }
+
+
+    @Override
+    public long estimateSize() {
+        // The fields of this class are already included in the shallow size computed by the document.
+        return super.estimateSize() + MemoryEstimator.shallowSize(StringBuilder.class) + MemoryEstimator.array(text.capacity(), 2);
+    }
+}
@@ -36,4 +36,12 @@ public interface SuspensionHook {
     byte[] retrieve(int id);
 
     Iterable<Integer> getAllNodeIds();
+
+    /**
+     * Deletes the stored data of a logic node that has been removed from the model.
+     *
+     * @param id
+     */
+    default void remove(int id) {
+    }
 }
@@ -18,6 +18,7 @@ package network.aika.lattice;
 
 
 import network.aika.Document;
+import network.aika.MemoryEstimator;
 import network.aika.Model;
 import network.aika.Provider;
 import network.aika.Writable;
@@ -31,6 +32,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * The {@code InputNode} and the {@code AndNode} classes together form a pattern lattice, containing all
@@ -47,6 +49,17 @@ public class AndNode extends Node<AndNode, AndActivation> {
 
     public SortedMap<Refinement, RefValue> parents;
 
+    private static final Match[] NO_MATCHES = new Match[0];
+
+    /**
+     * The refinement table memoizes, for each pair of an input link of an activation of this node and a sibling
+     * activation, which and-children of this node join the two activations. The entries are keyed by the provider
+     * id of the common parent node and the refinements of the two links. Unlike the ref-value objects of the links,
+     * which belong to the sibling nodes, these keys remain the same if a sibling node is suspended and reloaded. The table is only allocated once an activation of this
+     * node has siblings and it is dropped whenever the and-children of this node change or this node is suspended.
+     */
+    private volatile ConcurrentSkipListMap<MatchKey, Match[]> refinementTable;
+
     public AndNode() {
         parents = new TreeMap<>();
     }
@@ -88,61 +101,69 @@ public class AndNode extends Node<AndNode, AndActivation> {
     }
 
 
+    void addAndChild(Refinement ref, RefValue child) {
+        super.addAndChild(ref, child);
+        refinementTable = null;
+    }
+
+
+    void removeAndChild(Refinement ref) {
+        super.removeAndChild(ref);
+        refinementTable = null;
+    }
+
+
+    @Override
+    public void suspend() {
+        refinementTable = null;
+    }
+
+
+    /**
+     * Joins the activation with its sibling activations, i.e. the activations that share a parent activation with
+     * it. The refinements that match a pair of siblings are looked up in the refinement table, so that pairs
+     * without a matching and-child do not cause any allocations.
+     */
     @Override
     void apply(AndActivation act) {
         if (andChildren != null) {
             TreeMap<Refinement, AndActivation> results = null;
-            for (Link fl : act.inputs) {
-                if(fl == null) continue;
-
-                InputActivation refAct = fl.refAct;
-                Refinement ref = fl.ref;
-                RefValue rv = fl.rv;
-                NodeActivation<?> pAct = fl.input;
-
-                for (Link sl : pAct.outputsToAndNode.values()) {
-                    InputActivation secondRefAct = sl.refAct;
-                    Refinement secondRef = sl.ref;
-                    RefValue secondRv = sl.rv;
-                    NodeActivation secondAct = sl.output;
-                    if (act != secondAct) {
-                        Relation[] relations = new Relation[secondRef.relations.length() + 1];
-                        for(int i = 0; i < secondRef.relations.length(); i++) {
-                            relations[rv.offsets[i]] = secondRef.relations.get(i);
-                        }
+            try {
+                lock.acquireReadLock();
+                if (andChildren != null) {
+                    for (Link fl : act.inputs) {
+                        if (fl == null) continue;
 
-                        lock.acquireReadLock();
-                        for(Map.Entry<Refinement, RefValue> me: andChildren.subMap(
-                                new Refinement(RelationsMap.MIN, secondRef.input),
-                                new Refinement(RelationsMap.MAX, secondRef.input)).entrySet()) {
-                            Refinement nRef = me.getKey();
-                            RefValue nRv = me.getValue();
-                            if(nRef.contains(secondRef, rv)) {
-                                if(results == null) {
-                                    results = new TreeMap<>();
-                                }
+                        for (Link sl : fl.input.outputsToAndNode.values()) {
+                            NodeActivation secondAct = sl.output;
+                            // A sibling that is still queued performs the join itself once it is processed.
+                            if (act == secondAct || !secondAct.registered) continue;
+
+                            Match[] matches = lookupMatches(fl, sl);
+                            if (matches.length == 0) continue;
 
-                                AndActivation nln = results.get(nRef);
-                                if(nln == null) {
-                                    nln = new AndActivation(act.doc.activationIdCounter++, act.doc, nRv.child.get(act.doc));
-                                    nln.link(nRef, nRv, secondRefAct, act);
-                                    results.put(nRef, nln);
+                            if (results == null) {
+                                results = new TreeMap<>();
+                            }
+                            for (Match m : matches) {
+                                AndActivation nln = results.get(m.nRef);
+                                if (nln == null) {
+                                    nln = new AndActivation(act.doc.activationIdCounter++, act.doc, m.nRv.child.get(act.doc));
+                                    nln.link(m.nRef, m.nRv, sl.refAct, act);
+                                    results.put(m.nRef, nln);
                                 }
 
-                                for(Map.Entry<Refinement, RefValue> mea: nln.node.parents.entrySet()) {
-                                    Refinement secondNRef = mea.getKey();
-                                    RefValue secondNRv = mea.getValue();
-                                    if(secondNRv.parent.get(act.doc) == secondAct.node && secondNRef.contains(ref, secondRv)) {
-                                        nln.link(secondNRef, secondNRv, refAct, secondAct);
-                                        break;
-                                    }
+                                if (m.secondNRef != null) {
+                                    nln.link(m.secondNRef, m.secondNRv, fl.refAct, secondAct);
                                 }
                             }
                         }
-                        lock.releaseReadLock();
                     }
                 }
+            } finally {
+                lock.releaseReadLock();
             }
+
             if(results != null) {
                 for(AndActivation nlAct: results.values()) {
                     nlAct.node.addActivation(nlAct);
@@ -154,6 +175,108 @@ public class AndNode extends Node<AndNode, AndActivation> {
     }
 
 
+    /**
+     * Needs to be called while holding the read lock.
+     */
+    private Match[] lookupMatches(Link fl, Link sl) {
+        ConcurrentSkipListMap<MatchKey, Match[]> table = refinementTable;
+        if (table == null) {
+            synchronized (this) {
+                if (refinementTable == null) {
+                    refinementTable = new ConcurrentSkipListMap<>();
+                }
+                table = refinementTable;
+            }
+        }
+
+        MatchKey key = new MatchKey(fl.rv.parent.id, fl.ref, sl.ref);
+        Match[] matches = table.get(key);
+        if (matches == null) {
+            matches = computeMatches(fl.ref, fl.rv, sl.ref, sl.rv);
+            table.put(key, matches);
+        }
+        return matches;
+    }
+
+
+    /**
+     * Returns the number of memoized sibling pairs or -1 if the refinement table has not been allocated.
+     */
+    int getRefinementTableSize() {
+        ConcurrentSkipListMap<MatchKey, Match[]> table = refinementTable;
+        return table != null ? table.size() : -1;
+    }
+
+
+    private Match[] computeMatches(Refinement ref, RefValue rv, Refinement secondRef, RefValue secondRv) {
+        List<Match> results = null;
+        for(Map.Entry<Refinement, RefValue> me: andChildren.subMap(
+                new Refinement(RelationsMap.MIN, secondRef.input),
+                new Refinement(RelationsMap.MAX, secondRef.input)).entrySet()) {
+            Refinement nRef = me.getKey();
+            RefValue nRv = me.getValue();
+            if(nRef.contains(secondRef, rv)) {
+                Match m = new Match(nRef, nRv);
+                for(Map.Entry<Refinement, RefValue> mea: nRv.child.get().parents.entrySet()) {
+                    Refinement secondNRef = mea.getKey();
+                    RefValue secondNRv = mea.getValue();
+                    if(secondNRv.parent.equals(secondRv.child) && secondNRef.contains(ref, secondRv)) {
+                        m.secondNRef = secondNRef;
+                        m.secondNRv = secondNRv;
+                        break;
+                    }
+                }
+
+                if(results == null) {
+                    results = new ArrayList<>();
+                }
+                results.add(m);
+            }
+        }
+        return results != null ? results.toArray(new Match[results.size()]) : NO_MATCHES;
+    }
+
+
+    private static class MatchKey implements Comparable<MatchKey> {
+        int parentId;
+        Refinement ref;
+        Refinement secondRef;
+
+        MatchKey(int parentId, Refinement ref, Refinement secondRef) {
+            this.parentId = parentId;
+            this.ref = ref;
+            this.secondRef = secondRef;
+        }
+
+
+        @Override
+        public int compareTo(MatchKey mk) {
+            int r = Integer.compare(parentId, mk.parentId);
+            if(r != 0) return r;
+            r = ref.compareTo(mk.ref);
+            if(r != 0) return r;
+            return secondRef.compareTo(mk.secondRef);
+        }
+    }
+
+
+    /**
+     * An and-child that joins two sibling activations. The first link connects the child to the activation of this
+     * node and the second link to the sibling activation.
+     */
+    private static class Match {
+        Refinement nRef;
+        RefValue nRv;
+        Refinement secondNRef;
+        RefValue secondNRv;
+
+        Match(Refinement nRef, RefValue nRv) {
+            this.nRef = nRef;
+            this.nRv = nRv;
+        }
+    }
+
+
 
     @Override
     public void discover(AndActivation act, PatternDiscovery.Config config) {
@@ -181,11 +304,24 @@ public class AndNode extends Node<AndNode, AndActivation> {
     public RefValue extend(int threadId, Document doc, Refinement firstRef) {
         if(firstRef.relations.size() == 0) return null;
 
-        RefValue firstRV = getAndChild(firstRef);
-        if(firstRV != null) {
-            return firstRV;
+        // The lattice collector might remove a parent of the new node in the meantime. In this case the parents are
+        // determined again, unless this node itself has been removed.
+        while(true) {
+            RefValue firstRV = getAndChild(firstRef);
+            if (firstRV != null) {
+                return firstRV;
+            }
+
+            firstRV = createAndChild(threadId, doc, firstRef);
+            if (firstRV != null || isRemoved) {
+                return firstRV;
+            }
         }
+    }
+
 
+    private RefValue createAndChild(int threadId, Document doc, Refinement firstRef) {
+        RefValue firstRV;
         int firstRefOffset = level;
         Integer[] firstOffsets = new Integer[level];
         for(int i = 0; i < firstOffsets.length; i++) {
@@ -243,43 +379,62 @@ public class AndNode extends Node<AndNode, AndActivation> {
         firstRV = new RefValue(firstOffsets, firstRefOffset, provider);
         nextLevelParents.put(firstRef, firstRV);
 
-        return createAndNode(provider.model, doc, nextLevelParents, level + 1) ? firstRV : null;
+        return createAndNode(provider.model, doc, nextLevelParents, level + 1, firstRef);
     }
 
 
 
-    static boolean createAndNode(Model m, Document doc, SortedMap<Refinement, RefValue> parents, int level) {
-        if (parents != null) {
-            // Locking needs to take place in a predefined order.
-            TreeSet<Provider<? extends Node>> parentsForLocking = new TreeSet();
-            for(RefValue rv: parents.values()) {
-                parentsForLocking.add(rv.parent);
-            }
+    /**
+     * Creates the and-node with the given parents, unless another thread has created it in the meantime.
+     *
+     * @param ref The refinement through which the caller extends its node.
+     * @return The ref-value of the given refinement in the parent node of the caller or null if one of the parents
+     * has been removed by the lattice collector.
+     */
+    static RefValue createAndNode(Model m, Document doc, SortedMap<Refinement, RefValue> parents, int level, Refinement ref) {
+        RefValue rv = parents.get(ref);
+
+        // Locking needs to take place in a predefined order.
+        TreeSet<Provider<? extends Node>> parentsForLocking = new TreeSet();
+        for(RefValue prv: parents.values()) {
+            parentsForLocking.add(prv.parent);
+        }
 
+        for (Provider<? extends Node> pn : parentsForLocking) {
+            pn.get().lock.acquireWriteLock();
+        }
+        try {
             for (Provider<? extends Node> pn : parentsForLocking) {
-                pn.get().lock.acquireWriteLock();
+                if (pn.get().isRemoved) {
+                    return null;
+                }
             }
-            try {
-                AndNode nln = new AndNode(m, level, parents);
 
-                nln.init();
-                nln.postCreate(doc);
-            } finally {
-                for (Provider<? extends Node> pn : parentsForLocking) {
-                    pn.get().lock.releaseWriteLock();
-                }
+            Node<?, ?> pn = rv.parent.get();
+            RefValue existingRV = pn.andChildren != null ? pn.andChildren.get(ref) : null;
+            if(existingRV != null) {
+                return existingRV;
+            }
+
+            AndNode nln = new AndNode(m, level, parents);
+
+            nln.init();
+            nln.postCreate(doc);
+        } finally {
+            for (Provider<? extends Node> pn : parentsForLocking) {
+                pn.get().lock.releaseWriteLock();
             }
         }
 
-        return true;
+        return rv;
     }
 
 
     @Override
-    public void changeNumberOfNeuronRefs(int threadId, long v, int d) {
-        super.changeNumberOfNeuronRefs(threadId, v, d);
+    public void changeNumberOfNeuronRefs(Set<Node> visited, int d) {
+        super.changeNumberOfNeuronRefs(visited, d);
 
-        parents.values().forEach(rv -> rv.parent.get().changeNumberOfNeuronRefs(threadId, v, d));
+        parents.values().forEach(rv -> rv.parent.get().changeNumberOfNeuronRefs(visited, d));
     }
 
 
@@ -309,6 +464,25 @@ public class AndNode extends Node<AndNode, AndActivation> {
     }
 
 
+    @Override
+    public long estimateSize() {
+        // The refinements and ref-values are shared with the parent nodes and are accounted for there.
+        long size = super.estimateSize() + MemoryEstimator.treeMap(parents);
+        ConcurrentSkipListMap<MatchKey, Match[]> table = refinementTable;
+        if(table != null) {
+            size += MemoryEstimator.treeMap(table);
+            for(Match[] matches: table.values()) {
+                size += MemoryEstimator.shallowSize(MatchKey.class);
+                if(matches.length > 0) {
+                    size += MemoryEstimator.array(matches.length, MemoryEstimator.REFERENCE);
+                    size += matches.length * MemoryEstimator.shallowSize(Match.class);
+                }
+            }
+        }
+        return size;
+    }
+
+
     public String logicToString() {
         StringBuilder sb = new StringBuilder();
         sb.append("AND[");
@@ -406,6 +580,11 @@ public class AndNode extends Node<AndNode, AndActivation> {
             return relations.compareTo(ref.relations);
         }
 
+        public long estimateSize() {
+            return MemoryEstimator.shallowSize(Refinement.class) + relations.estimateSize();
+        }
+
+
         public boolean contains(Refinement ref, RefValue rv) {
             for(int i = 0; i < ref.relations.length(); i++) {
                 Relation ra = ref.relations.get(i);
@@ -439,6 +618,11 @@ public class AndNode extends Node<AndNode, AndActivation> {
         }
 
 
+        public long estimateSize() {
+            return MemoryEstimator.shallowSize(RelationsMap.class) + (relations != null ? MemoryEstimator.array(relations.length, MemoryEstimator.REFERENCE) : 0);
+        }
+
+
         public void write(DataOutput out) throws IOException {
             out.writeInt(relations.length);
             for(int i = 0; i < relations.length; i++) {
@@ -553,6 +737,13 @@ public class AndNode extends Node<AndNode, AndActivation> {
             this.parent = parent;
         }
 
+
+        public long estimateSize() {
+            return MemoryEstimator.shallowSize(RefValue.class) +
+                    MemoryEstimator.array(offsets.length, MemoryEstimator.REFERENCE) +
+                    MemoryEstimator.array(reverseOffsets.length, MemoryEstimator.REFERENCE);
+        }
+
         @Override
         public void write(DataOutput out) throws IOException {
             out.writeInt(offsets.length);
@@ -600,6 +791,11 @@ public class AndNode extends Node<AndNode, AndActivation> {
             inputs = new Link[node.level];
         }
 
+        @Override
+        public long estimateSize() {
+            return super.estimateSize() + MemoryEstimator.REFERENCE + MemoryEstimator.array(inputs.length, MemoryEstimator.REFERENCE);
+        }
+
         public void link(Refinement ref, RefValue rv, InputActivation refAct, NodeActivation<?> input) {
             Link l = new Link(ref, rv, refAct, input, this);
             inputs[rv.refOffset] = l;
@@ -622,6 +818,14 @@ public class AndNode extends Node<AndNode, AndActivation> {
                 return null;
             }
         }
+
+        @Override
+        public boolean endsBefore(int pos) {
+            for(Link l: inputs) {
+                if(l != null && (!l.refAct.endsBefore(pos) || !l.input.endsBefore(pos))) return false;
+            }
+            return true;
+        }
     }
 
 
@@ -18,12 +18,11 @@ package network.aika.lattice;
 
 
 import network.aika.Document;
+import network.aika.MemoryEstimator;
 import network.aika.Model;
 import network.aika.Provider;
 import network.aika.neuron.INeuron;
 import network.aika.neuron.Neuron;
-import network.aika.neuron.activation.Range;
-import network.aika.neuron.relation.RangeRelation;
 import network.aika.neuron.relation.Relation;
 import network.aika.neuron.activation.Activation;
 import network.aika.training.PatternDiscovery;
@@ -39,8 +38,6 @@ import java.io.IOException;
 import java.util.*;
 import java.util.stream.Stream;
 
-import static network.aika.neuron.activation.Range.Relation.*;
-
 
 /**
  * The {@code InputNode} class is the input layer for the boolean logic. The input-node has two sources of
@@ -53,7 +50,13 @@ public class InputNode extends Node<InputNode, InputActivation> {
 
     public Neuron inputNeuron;
 
-    public TreeMap<AndNode.Refinement, AndNode.RefValue> nonExactAndChildren;
+    public static int MAX_ITERATED_AND_CHILDREN = 10;
+
+    /**
+     * Groups the and-children by the input node of their refinement. The index is rebuilt lazily after the
+     * and-children have changed and is never modified afterwards, so that it can be read without holding the lock.
+     */
+    private volatile Map<Provider<InputNode>, List<Map.Entry<Refinement, RefValue>>> andChildrenByInput;
 
     private long visitedDiscover;
 
@@ -107,30 +110,31 @@ public class InputNode extends Node<InputNode, InputActivation> {
 
     void addAndChild(AndNode.Refinement ref, AndNode.RefValue child) {
         super.addAndChild(ref, child);
-
-        if(!ref.relations.isExact()) {
-            if (nonExactAndChildren == null) {
-                nonExactAndChildren = new TreeMap<>();
-            }
-
-            AndNode.RefValue n = nonExactAndChildren.put(ref, child);
-            assert n == null;
-        }
+        andChildrenByInput = null;
     }
 
 
     void removeAndChild(AndNode.Refinement ref) {
         super.removeAndChild(ref);
+        andChildrenByInput = null;
+    }
 
-        if(!ref.relations.isExact()) {
-            if (nonExactAndChildren != null) {
-                nonExactAndChildren.remove(ref);
 
-                if (nonExactAndChildren.isEmpty()) {
-                    nonExactAndChildren = null;
-                }
+    /**
+     * Needs to be called while holding the read lock.
+     */
+    private Map<Provider<InputNode>, List<Map.Entry<Refinement, RefValue>>> getAndChildrenByInput() {
+        Map<Provider<InputNode>, List<Map.Entry<Refinement, RefValue>>> index = andChildrenByInput;
+        if(index == null) {
+            Map<Provider<InputNode>, List<Map.Entry<Refinement, RefValue>>> tmp = new HashMap<>();
+            for(Map.Entry<Refinement, RefValue> me: andChildren.entrySet()) {
+                tmp.computeIfAbsent(me.getKey().input, in -> new ArrayList<>())
+                        .add(new AbstractMap.SimpleImmutableEntry<>(me.getKey(), me.getValue()));
             }
+            index = Collections.unmodifiableMap(tmp);
+            andChildrenByInput = index;
         }
+        return index;
     }
 
 
@@ -156,7 +160,7 @@ public class InputNode extends Node<InputNode, InputActivation> {
         rv = new RefValue(new Integer[] {0}, 1, provider);
         nlParents.put(ref, rv);
 
-        return AndNode.createAndNode(provider.model, doc, nlParents, level + 1) ? rv : null;
+        return AndNode.createAndNode(provider.model, doc, nlParents, level + 1, ref);
     }
 
 
@@ -168,16 +172,10 @@ public class InputNode extends Node<InputNode, InputActivation> {
         try {
             lock.acquireReadLock();
             if (andChildren != null) {
-                TreeMap<AndNode.Refinement, AndNode.RefValue> children;
-                if(andChildren.size() > 10) {
-                    children = nonExactAndChildren;
-                    applyExactRelations(act);
+                if(andChildren.size() > MAX_ITERATED_AND_CHILDREN) {
+                    applyIndexed(act);
                 } else {
-                    children = andChildren;
-                }
-
-                if(children != null) {
-                    children.forEach((ref, rv) -> {
+                    andChildren.forEach((ref, rv) -> {
                         InputNode in = ref.input.getIfNotSuspended();
                         if (in != null) {
                             addNextLevelActivations(in, ref, rv.child.get(act.doc), act);
@@ -193,18 +191,37 @@ public class InputNode extends Node<InputNode, InputActivation> {
     }
 
 
-    private void applyExactRelations(InputActivation act) {
-        Activation iAct = act.input.input;
+    /**
+     * Only visits the and-children whose second input neuron has activations in the current document. Depending on
+     * which side is smaller, either the activated neurons of the document are looked up in the children index or
+     * the entries of the index are iterated.
+     */
+    private void applyIndexed(InputActivation act) {
+        Document doc = act.doc;
+        Map<Provider<InputNode>, List<Map.Entry<Refinement, RefValue>>> index = getAndChildrenByInput();
 
-        for(Range.Relation rel: new Range.Relation[] {BEGIN_EQUALS, END_EQUALS, BEGIN_TO_END_EQUALS, END_TO_BEGIN_EQUALS}) {
-            for(Activation linkedAct: RangeRelation.getActivationsByRangeEquals(act.doc, iAct.range, rel)) {
-                Provider<InputNode> in = linkedAct.getINeuron().outputNode;
-                for (Map.Entry<AndNode.Refinement, AndNode.RefValue> me : andChildren.subMap(
-                        new Refinement(RelationsMap.MIN, in),
-                        new Refinement(RelationsMap.MAX, in)).entrySet()) {
-                    addNextLevelActivations(in.get(act.doc), me.getKey(), me.getValue().child.get(act.doc), act);
+        if(index.size() > doc.activatedNeurons.size()) {
+            for(INeuron n: doc.activatedNeurons) {
+                if(n.outputNode != null) {
+                    applyChildren(index.get(n.outputNode), act);
                 }
             }
+        } else {
+            for(List<Map.Entry<Refinement, RefValue>> children: index.values()) {
+                applyChildren(children, act);
+            }
+        }
+    }
+
+
+    private static void applyChildren(List<Map.Entry<Refinement, RefValue>> children, InputActivation act) {
+        if(children == null) return;
+
+        InputNode in = children.get(0).getKey().input.getIfNotSuspended();
+        if (in == null) return;
+
+        for(Map.Entry<Refinement, RefValue> me: children) {
+            addNextLevelActivations(in, me.getKey(), me.getValue().child.get(act.doc), act);
         }
     }
 
@@ -220,7 +237,8 @@ public class InputNode extends Node<InputNode, InputActivation> {
 
         ref.relations.get(0).getActivations(secondNode.inputNeuron.get(doc), iAct).forEach(secondIAct -> {
                     InputActivation secondAct = secondIAct.outputToInputNode.output;
-                    if(secondAct != null) {
+                    // Activations that are still waiting in the queue are joined once they are processed themselves.
+                    if(secondAct != null && secondAct.registered) {
                     //    if (!Conflicts.isConflicting(iAct, secondIAct)) {
                             AndActivation oAct = new AndActivation(doc.activationIdCounter++, doc, nln);
                             for(Map.Entry<Refinement, RefValue> me: nln.parents.entrySet()) {
@@ -270,6 +288,22 @@ public class InputNode extends Node<InputNode, InputActivation> {
     }
 
 
+    @Override
+    public long estimateSize() {
+        long size = super.estimateSize();
+        Map<Provider<InputNode>, List<Map.Entry<Refinement, RefValue>>> index = andChildrenByInput;
+        if(index != null) {
+            // The refinements and values themselves are shared with the and-children map.
+            size += MemoryEstimator.treeMap(index.size());
+            for(List<Map.Entry<Refinement, RefValue>> children: index.values()) {
+                size += MemoryEstimator.ARRAY_LIST + MemoryEstimator.array(children.size(), MemoryEstimator.REFERENCE);
+                size += children.size() * MemoryEstimator.shallowSize(AbstractMap.SimpleImmutableEntry.class);
+            }
+        }
+        return size;
+    }
+
+
     public String logicToString() {
         StringBuilder sb = new StringBuilder();
         sb.append("I");
@@ -324,10 +358,20 @@ public class InputNode extends Node<InputNode, InputActivation> {
             iAct.outputToInputNode = input;
         }
 
+        @Override
+        public long estimateSize() {
+            return super.estimateSize() + MemoryEstimator.REFERENCE;
+        }
+
         public Activation getInputActivation(int i) {
             assert i == 0;
             return input.input;
         }
+
+        @Override
+        public boolean endsBefore(int pos) {
+            return input.input.endsBefore(pos);
+        }
     }
 
 
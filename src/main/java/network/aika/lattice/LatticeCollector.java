@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.lattice;
+
+
+import network.aika.AbstractNode;
+import network.aika.Model;
+import network.aika.Provider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+
+/**
+ * The {@code LatticeCollector} incrementally removes the and-nodes of the pattern lattice that are no longer
+ * required, i.e. that are neither referenced by a neuron nor have been discovered. Each step only scans a limited
+ * number of the loaded logic nodes, starting where the previous step has stopped, and removes a limited number of
+ * them. Only leaf nodes are removed, so that the parents of a removed node become candidates for a later step. Nodes
+ * that might still be used by a document that is currently being processed are skipped.
+ *
+ * <p>The removed nodes are unlinked from their parents and their stored data is deleted from the suspension hook.
+ * Suspended nodes are only examined once they have been reactivated.
+ *
+ * @author Lukas Molzberger
+ */
+public class LatticeCollector {
+
+    public static class Config {
+        public int maxScannedNodes = 1000;
+        public int maxRemovedNodes = 100;
+        public long interval = 1000;
+
+
+        /**
+         * The maximum number of loaded logic nodes that are examined in a single step.
+         *
+         * @param maxScannedNodes
+         * @return
+         */
+        public Config setMaxScannedNodes(int maxScannedNodes) {
+            this.maxScannedNodes = maxScannedNodes;
+            return this;
+        }
+
+
+        /**
+         * The maximum number of and-nodes that are removed in a single step.
+         *
+         * @param maxRemovedNodes
+         * @return
+         */
+        public Config setMaxRemovedNodes(int maxRemovedNodes) {
+            this.maxRemovedNodes = maxRemovedNodes;
+            return this;
+        }
+
+
+        /**
+         * The pause in milliseconds between two steps of the background thread.
+         *
+         * @param interval
+         * @return
+         */
+        public Config setInterval(long interval) {
+            this.interval = interval;
+            return this;
+        }
+    }
+
+
+    private Model model;
+    private Config config;
+
+    // The provider id at which the next step continues.
+    private int cursor = Integer.MIN_VALUE;
+
+    private Thread thread;
+    private volatile boolean running;
+
+    public long numberOfRemovedNodes;
+
+
+    public LatticeCollector(Model model, Config config) {
+        this.model = model;
+        this.config = config;
+    }
+
+
+    /**
+     * Performs a single step of the collector.
+     *
+     * @return The number of removed and-nodes.
+     */
+    public synchronized int step() {
+        List<Provider<? extends AbstractNode>> tmp = new ArrayList<>();
+        synchronized (model.activeProviders) {
+            for(Map.Entry<Integer, Provider<? extends AbstractNode>> me: model.activeProviders.entrySet()) {
+                if(me.getKey() > cursor) {
+                    tmp.add(me.getValue());
+                    if(tmp.size() >= config.maxScannedNodes) break;
+                }
+            }
+        }
+        cursor = tmp.size() < config.maxScannedNodes || tmp.isEmpty() ? Integer.MIN_VALUE : tmp.get(tmp.size() - 1).id;
+
+        int oldestDocId = model.getOldestDocIdInProcessing();
+        int removed = 0;
+        for(Provider<? extends AbstractNode> p: tmp) {
+            if(removed >= config.maxRemovedNodes) {
+                cursor = p.id - 1;
+                break;
+            }
+
+            AbstractNode an = p.getIfNotSuspended();
+            if(an instanceof AndNode && isCollectable((AndNode) an, oldestDocId) && remove((AndNode) an, oldestDocId)) {
+                removed++;
+            }
+        }
+
+        numberOfRemovedNodes += removed;
+        return removed;
+    }
+
+
+    private boolean isCollectable(AndNode n, int oldestDocId) {
+        if(n.isRemoved || n.isRequired() || n.andChildren != null || n.orChildren != null) {
+            return false;
+        }
+
+        // The node might still be in use by a document that is currently being processed.
+        if(n.lastUsedDocumentId >= oldestDocId && oldestDocId != Integer.MAX_VALUE) {
+            return false;
+        }
+        for(Node.ThreadState th: n.threads) {
+            if(th != null && (!th.activations.isEmpty() || !th.added.isEmpty())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Unlinks the node from its parents. The first check of the node has been performed without any locks, so the
+     * node is checked again while holding the write locks of its parents and of itself. Afterwards no converter can
+     * reach the node through the and-children of its parents anymore, and a converter that has reached it before
+     * notices that it has been removed. The locks are acquired in the order of the provider ids, as in
+     * {@code AndNode.createAndNode}.
+     *
+     * @return Whether the node has been removed.
+     */
+    private boolean remove(AndNode n, int oldestDocId) {
+        TreeSet<Provider<? extends Node>> nodesForLocking = new TreeSet<>();
+        nodesForLocking.add(n.provider);
+        for(AndNode.RefValue rv: n.parents.values()) {
+            nodesForLocking.add(rv.parent);
+        }
+
+        for(Provider<? extends Node> pn: nodesForLocking) {
+            pn.get().lock.acquireWriteLock();
+        }
+        try {
+            if(!isCollectable(n, oldestDocId)) {
+                return false;
+            }
+            n.remove();
+        } finally {
+            for(Provider<? extends Node> pn: nodesForLocking) {
+                pn.get().lock.releaseWriteLock();
+            }
+        }
+
+        model.removeProvider(n.provider);
+        if(model.getSuspensionHook() != null) {
+            model.getSuspensionHook().remove(n.provider.id);
+        }
+        return true;
+    }
+
+
+    /**
+     * Starts a daemon thread that performs a step of the collector after every interval.
+     */
+    public synchronized void start() {
+        if(thread != null) return;
+
+        running = true;
+        thread = new Thread(() -> {
+            while(running) {
+                step();
+                try {
+                    Thread.sleep(config.interval);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "lattice-collector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+            running = false;
+        }
+        if(t != null) {
+            t.interrupt();
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.lattice;
+
+
+import network.aika.AbstractNode;
+import network.aika.Converter;
+import network.aika.Model;
+import network.aika.Provider;
+import network.aika.SuspensionHook;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * The {@code LatticeStatistics} describe the shape of the pattern lattice of a model. The loaded logic nodes are
+ * examined in memory, whereas the suspended ones are read one after another from the suspension hook without
+ * reactivating them. The statistics can be exported as JSON.
+ *
+ * <p>The fan-out distributions map the lower bound of a power of two bucket to the number of nodes whose number of
+ * children falls into that bucket, e.g. the bucket 4 contains the nodes with 4 to 7 children.
+ *
+ * @author Lukas Molzberger
+ */
+public class LatticeStatistics {
+
+    public int residentNodes;
+    public int suspendedNodes;
+
+    // node kind -> number of nodes
+    public TreeMap<String, Integer> countByKind = new TreeMap<>();
+    // level -> number of and-nodes
+    public TreeMap<Integer, Integer> andNodesByLevel = new TreeMap<>();
+
+    public TreeMap<Integer, Integer> andChildrenFanOut = new TreeMap<>();
+    public TreeMap<Integer, Integer> orChildrenFanOut = new TreeMap<>();
+
+    // number of neuron references -> number of and-nodes
+    public TreeMap<Integer, Integer> neuronRefsDistribution = new TreeMap<>();
+
+    /**
+     * The and-nodes that are part of the lattices of more than one neuron.
+     */
+    public int sharedAndNodes;
+
+    /**
+     * The and-nodes that have been created by the pattern discovery but are not referenced by any neuron.
+     */
+    public int discoveredOnlyAndNodes;
+
+    /**
+     * The and-nodes of the maximum size {@code Converter.MAX_AND_NODE_SIZE} or larger.
+     */
+    public int maxSizeAndNodes;
+
+    /**
+     * The nodes with the most and-children, in descending order.
+     */
+    public List<Entry> largestFanOut = new ArrayList<>();
+
+
+    public static class Entry {
+        public final int id;
+        public final String kind;
+        public final int level;
+        public final Integer inputNeuronId;
+        public final int andChildren;
+        public final int orChildren;
+
+        public Entry(int id, String kind, int level, Integer inputNeuronId, int andChildren, int orChildren) {
+            this.id = id;
+            this.kind = kind;
+            this.level = level;
+            this.inputNeuronId = inputNeuronId;
+            this.andChildren = andChildren;
+            this.orChildren = orChildren;
+        }
+
+        public String toString() {
+            return kind + " " + id + " level:" + level + (inputNeuronId != null ? " input:" + inputNeuronId : "") +
+                    " and-children:" + andChildren + " or-children:" + orChildren;
+        }
+    }
+
+
+    /**
+     * Computes the statistics of all the logic nodes of the given model.
+     *
+     * @param m
+     * @param topN The number of nodes with the largest number of and-children that should be listed.
+     * @return
+     */
+    public static LatticeStatistics compute(Model m, int topN) {
+        LatticeStatistics ls = new LatticeStatistics();
+        PriorityQueue<Entry> largest = new PriorityQueue<>(Comparator.comparingInt(e -> e.andChildren));
+
+        List<Provider<? extends AbstractNode>> resident;
+        synchronized (m.activeProviders) {
+            resident = new ArrayList<>(m.activeProviders.values());
+        }
+
+        Set<Integer> residentIds = new HashSet<>();
+        for(Provider<? extends AbstractNode> p: resident) {
+            residentIds.add(p.id);
+
+            AbstractNode an = p.getIfNotSuspended();
+            if(an == null) {
+                an = readSuspended(m, p.id);
+                if(an != null) ls.suspendedNodes++;
+            } else if(an instanceof Node) {
+                ls.residentNodes++;
+            }
+            if(an instanceof Node) {
+                ls.addNode((Node) an, largest, topN);
+            }
+        }
+
+        SuspensionHook sh = m.getSuspensionHook();
+        if(sh != null) {
+            for(Integer id: sh.getAllNodeIds()) {
+                if(residentIds.contains(id)) continue;
+
+                AbstractNode an = readSuspended(m, id);
+                if(an instanceof Node) {
+                    ls.suspendedNodes++;
+                    ls.addNode((Node) an, largest, topN);
+                }
+            }
+        }
+
+        while(!largest.isEmpty()) {
+            ls.largestFanOut.add(largest.poll());
+        }
+        Collections.reverse(ls.largestFanOut);
+
+        return ls;
+    }
+
+
+    /**
+     * Deserializes the stored node into a detached copy, so that the provider remains suspended.
+     */
+    private static AbstractNode readSuspended(Model m, int id) {
+        SuspensionHook sh = m.getSuspensionHook();
+        if(sh == null) return null;
+
+        byte[] data = sh.retrieve(id);
+        if(data == null) return null;
+
+        try (
+                GZIPInputStream gzipis = new GZIPInputStream(new ByteArrayInputStream(data));
+                DataInputStream dis = new DataInputStream(gzipis)) {
+            // Neurons are stored by the same suspension hook.
+            if(dis.readBoolean()) {
+                return null;
+            }
+            return Node.readNode(dis, m.lookupNodeProvider(id));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private void addNode(Node<?, ?> n, PriorityQueue<Entry> largest, int topN) {
+        String kind = n.getClass().getSimpleName();
+        countByKind.merge(kind, 1, Integer::sum);
+
+        int andChildren = n.andChildren != null ? n.andChildren.size() : 0;
+        int orChildren = n.orChildren != null ? n.orChildren.size() : 0;
+
+        if(!(n instanceof OrNode)) {
+            andChildrenFanOut.merge(getBucket(andChildren), 1, Integer::sum);
+            orChildrenFanOut.merge(getBucket(orChildren), 1, Integer::sum);
+        }
+
+        if(n instanceof AndNode) {
+            int refs = n.numberOfNeuronRefs.get();
+            andNodesByLevel.merge(n.level, 1, Integer::sum);
+            neuronRefsDistribution.merge(refs, 1, Integer::sum);
+            if(refs > 1) {
+                sharedAndNodes++;
+            }
+            if(refs == 0 && n.isDiscovered) {
+                discoveredOnlyAndNodes++;
+            }
+            if(n.level >= Converter.MAX_AND_NODE_SIZE) {
+                maxSizeAndNodes++;
+            }
+        }
+
+        if(topN > 0 && !(n instanceof OrNode)) {
+            Integer inputNeuronId = n instanceof InputNode && ((InputNode) n).inputNeuron != null ? ((InputNode) n).inputNeuron.id : null;
+            largest.add(new Entry(n.provider.id, kind, n.level, inputNeuronId, andChildren, orChildren));
+            if(largest.size() > topN) {
+                largest.poll();
+            }
+        }
+    }
+
+
+    private static int getBucket(int x) {
+        return x == 0 ? 0 : Integer.highestOneBit(x);
+    }
+
+
+    /**
+     * Writes the statistics as a JSON object.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeJson(Appendable out) throws IOException {
+        out.append("{");
+        out.append("\"residentNodes\":").append(Integer.toString(residentNodes));
+        out.append(",\"suspendedNodes\":").append(Integer.toString(suspendedNodes));
+        out.append(",\"countByKind\":");
+        writeJsonMap(out, countByKind);
+        out.append(",\"andNodesByLevel\":");
+        writeJsonMap(out, andNodesByLevel);
+        out.append(",\"andChildrenFanOut\":");
+        writeJsonMap(out, andChildrenFanOut);
+        out.append(",\"orChildrenFanOut\":");
+        writeJsonMap(out, orChildrenFanOut);
+        out.append(",\"neuronRefsDistribution\":");
+        writeJsonMap(out, neuronRefsDistribution);
+        out.append(",\"sharedAndNodes\":").append(Integer.toString(sharedAndNodes));
+        out.append(",\"discoveredOnlyAndNodes\":").append(Integer.toString(discoveredOnlyAndNodes));
+        out.append(",\"maxAndNodeSize\":").append(Integer.toString(Converter.MAX_AND_NODE_SIZE));
+        out.append(",\"maxSizeAndNodes\":").append(Integer.toString(maxSizeAndNodes));
+        out.append(",\"largestFanOut\":[");
+        boolean first = true;
+        for(Entry e: largestFanOut) {
+            if(!first) {
+                out.append(",");
+            }
+            first = false;
+            out.append("{\"id\":").append(Integer.toString(e.id));
+            out.append(",\"kind\":\"").append(e.kind).append("\"");
+            out.append(",\"level\":").append(Integer.toString(e.level));
+            if(e.inputNeuronId != null) {
+                out.append(",\"inputNeuronId\":").append(Integer.toString(e.inputNeuronId));
+            }
+            out.append(",\"andChildren\":").append(Integer.toString(e.andChildren));
+            out.append(",\"orChildren\":").append(Integer.toString(e.orChildren));
+            out.append("}");
+        }
+        out.append("]}");
+    }
+
+
+    private static void writeJsonMap(Appendable out, Map<?, Integer> m) throws IOException {
+        out.append("{");
+        boolean first = true;
+        for(Map.Entry<?, Integer> me: m.entrySet()) {
+            if(!first) {
+                out.append(",");
+            }
+            first = false;
+            out.append("\"").append(me.getKey().toString()).append("\":").append(me.getValue().toString());
+        }
+        out.append("}");
+    }
+
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeJson(sb);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return sb.toString();
+    }
+
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Resident nodes: " + residentNodes + " suspended nodes: " + suspendedNodes + "\n");
+        sb.append("Nodes by kind: " + countByKind + "\n");
+        sb.append("And-nodes by level: " + andNodesByLevel + "\n");
+        sb.append("And-children fan-out: " + andChildrenFanOut + "\n");
+        sb.append("Or-children fan-out: " + orChildrenFanOut + "\n");
+        sb.append("Neuron references: " + neuronRefsDistribution + "\n");
+        sb.append("Shared and-nodes: " + sharedAndNodes + " discovered only: " + discoveredOnlyAndNodes +
+                " of maximum size: " + maxSizeAndNodes + "\n");
+        sb.append("Largest fan-out:\n");
+        for(Entry e: largestFanOut) {
+            sb.append("  " + e + "\n");
+        }
+        return sb.toString();
+    }
+}
@@ -75,6 +75,11 @@ public abstract class Node<T extends Node, A extends NodeActivation<T>> extends
     /**
      * The {@code ThreadState} is a thread local data structure containing the activations of a single document for
      * a specific logic node.
+     *
+     * <p>A thread id is owned by the single document that is registered for it in {@code Model.docs}, which
+     * {@code Model.createDocument} enforces. Only this document may create, access or remove the thread states of
+     * its thread id. Structural changes of the lattice, such as the conversion of a neuron, never use thread states,
+     * so that they may run concurrently with the documents of any thread id.
      */
     public static class ThreadState<T extends Node, A extends NodeActivation> {
         public long lastUsed;
@@ -82,15 +87,26 @@ public abstract class Node<T extends Node, A extends NodeActivation<T>> extends
         public List<A> added;
         public List<A> activations;
 
-        public long visited;
-
         public boolean isQueued = false;
         public long queueId;
 
+        // All the thread states of a single thread form an intrusive list, so that the stale thread states can be
+        // removed without having to scan all the nodes of the model. The node is referenced through its provider,
+        // so that the list does not keep a suspended node in memory.
+        Provider<? extends Node> provider;
+        ThreadState<?, ?> nextInThread;
+
         public ThreadState() {
             added = new ArrayList<>();
             activations = new ArrayList<>();
         }
+
+
+        public long estimateSize() {
+            return MemoryEstimator.shallowSize(ThreadState.class) +
+                    MemoryEstimator.arrayList(added) +
+                    MemoryEstimator.arrayList(activations);
+        }
     }
 
 
@@ -100,12 +116,50 @@ public abstract class Node<T extends Node, A extends NodeActivation<T>> extends
             if (!create) return null;
 
             th = new ThreadState();
+            th.provider = provider;
+
+            Model m = provider.model;
+            th.nextInThread = m.threadStates[threadId];
+            m.threadStates[threadId] = th;
+
             threads[threadId] = th;
         }
         th.lastUsed = provider.model.docIdCounter.get();
         return th;
     }
 
+    /**
+     * Removes the thread states of the given thread that have not been used since {@code minLastUsed}. Only the
+     * thread states that have been created by this thread are visited. Entries of nodes that have been suspended or
+     * whose thread state has already been replaced are dropped from the list as well.
+     *
+     * @param m
+     * @param threadId
+     * @param minLastUsed
+     */
+    public static void removeStaleThreadStates(Model m, int threadId, long minLastUsed) {
+        ThreadState<?, ?> prev = null;
+        for(ThreadState<?, ?> th = m.threadStates[threadId]; th != null; th = th.nextInThread) {
+            Node n = th.provider.getIfNotSuspended();
+            boolean remove = n == null || n.threads[threadId] != th;
+            if(!remove && th.lastUsed < minLastUsed) {
+                n.threads[threadId] = null;
+                remove = true;
+            }
+
+            if(remove) {
+                if(prev == null) {
+                    m.threadStates[threadId] = th.nextInThread;
+                } else {
+                    prev.nextInThread = th.nextInThread;
+                }
+            } else {
+                prev = th;
+            }
+        }
+    }
+
+
     public abstract AndNode.RefValue extend(int threadId, Document doc, AndNode.Refinement ref);
 
     abstract void apply(A act);
@@ -201,6 +255,7 @@ public abstract class Node<T extends Node, A extends NodeActivation<T>> extends
             doc.activatedNodes.add(act.node);
         }
         th.activations.add(act);
+        act.registered = true;
 
         doc.addedNodeActivations.add(act);
     }
@@ -227,6 +282,20 @@ public abstract class Node<T extends Node, A extends NodeActivation<T>> extends
     }
 
 
+    /**
+     * Removes the activations of the given document whose underlying neuron activations all end at or before the
+     * given position.
+     *
+     * @param doc
+     * @param pos
+     */
+    public void removeActivationsBefore(Document doc, int pos) {
+        ThreadState<T, A> th = getThreadState(doc.threadId, false);
+        if (th == null) return;
+        th.activations.removeIf(act -> act.endsBefore(pos));
+    }
+
+
     /**
      * Process all added or removed activation for this logic node.
      *
@@ -288,10 +357,62 @@ public abstract class Node<T extends Node, A extends NodeActivation<T>> extends
     }
 
 
-    public void changeNumberOfNeuronRefs(int threadId, long v, int d) {
-        ThreadState th = getThreadState(threadId, true);
-        if (th.visited == v) return;
-        th.visited = v;
+    /**
+     * Whether this node has been removed from the pattern lattice, for instance by the lattice collector.
+     */
+    public boolean isRemoved() {
+        return isRemoved;
+    }
+
+
+    /**
+     * Estimates the number of bytes retained by this node. The children entries are accounted for by the parent
+     * node, whereas the activations are accounted for by the documents they belong to.
+     *
+     * @return
+     */
+    @Override
+    public long estimateSize() {
+        long size = MemoryEstimator.shallowSize(getClass());
+        size += MemoryEstimator.ATOMIC_INTEGER;
+        size += MemoryEstimator.READ_WRITE_LOCK;
+
+        size += MemoryEstimator.array(threads.length, MemoryEstimator.REFERENCE);
+        for(ThreadState th: threads) {
+            if(th != null) {
+                size += th.estimateSize();
+            }
+        }
+
+        lock.acquireReadLock();
+        if(andChildren != null) {
+            size += MemoryEstimator.treeMap(andChildren);
+            for(Map.Entry<AndNode.Refinement, AndNode.RefValue> me: andChildren.entrySet()) {
+                size += me.getKey().estimateSize();
+                size += me.getValue().estimateSize();
+            }
+        }
+        if(orChildren != null) {
+            size += MemoryEstimator.treeSet(orChildren);
+            for(OrNode.OrEntry oe: orChildren) {
+                size += oe.estimateSize();
+            }
+        }
+        lock.releaseReadLock();
+
+        return size;
+    }
+
+
+    /**
+     * Changes the number of neurons that reference this node and its ancestors. Each node is changed only once,
+     * even if it can be reached through several parents.
+     *
+     * @param visited The nodes that have already been changed.
+     * @param d
+     */
+    public void changeNumberOfNeuronRefs(Set<Node> visited, int d) {
+        if (!visited.add(this)) return;
         numberOfNeuronRefs.addAndGet(d);
     }
 
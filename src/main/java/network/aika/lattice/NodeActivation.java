@@ -18,6 +18,7 @@ package network.aika.lattice;
 
 
 import network.aika.Document;
+import network.aika.MemoryEstimator;
 import network.aika.neuron.activation.Activation;
 
 import java.util.*;
@@ -32,6 +33,7 @@ public abstract class NodeActivation<T extends Node> implements Comparable<NodeA
     public final Document doc;
 
     public long visited = -1;
+    public boolean registered;
     public Long repropagateV;
 
     public TreeMap<Integer, AndNode.Link> outputsToAndNode = new TreeMap<>();
@@ -48,6 +50,33 @@ public abstract class NodeActivation<T extends Node> implements Comparable<NodeA
     public abstract Activation getInputActivation(int i);
 
 
+    /**
+     * Checks whether all the underlying neuron activations of this logic node activation end at or before the given
+     * position.
+     *
+     * @param pos
+     * @return
+     */
+    public abstract boolean endsBefore(int pos);
+
+
+    /**
+     * Estimates the number of bytes retained by this activation. The links between two logic node activations are
+     * accounted for by the input activation.
+     *
+     * @return
+     */
+    public long estimateSize() {
+        long size = MemoryEstimator.shallowSize(getClass());
+        size += MemoryEstimator.treeMap(outputsToAndNode) + outputsToAndNode.size() * (MemoryEstimator.BOXED_NUMBER + MemoryEstimator.shallowSize(AndNode.Link.class));
+        size += MemoryEstimator.treeMap(outputsToOrNode) + outputsToOrNode.size() * (MemoryEstimator.BOXED_NUMBER + MemoryEstimator.shallowSize(OrNode.Link.class));
+        if(outputToInputNode != null) {
+            size += MemoryEstimator.shallowSize(InputNode.Link.class);
+        }
+        return size;
+    }
+
+
     @Override
     public int compareTo(NodeActivation<T> act) {
         return Integer.compare(id, act.id);
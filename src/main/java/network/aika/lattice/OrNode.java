@@ -186,12 +186,26 @@ public class OrNode extends Node<OrNode, Activation> {
     }
 
 
-    public void addInput(int[] synapseIds, int threadId, Node in, boolean andMode) {
-        in.changeNumberOfNeuronRefs(threadId, provider.model.visitedCounter.addAndGet(1), 1);
-
+    /**
+     * Adds the given node as an input of this or-node. The input node is referenced while holding its write lock, so
+     * that the lattice collector either sees the reference or has already removed the node.
+     *
+     * @return False if the input node has been removed from the lattice in the meantime.
+     */
+    public boolean addInput(int[] synapseIds, Node in, boolean andMode) {
         OrEntry oe = new OrEntry(synapseIds, in.provider, provider);
-        in.addOrChild(oe);
-        in.setModified();
+
+        in.lock.acquireWriteLock();
+        try {
+            if (in.isRemoved) {
+                return false;
+            }
+            in.changeNumberOfNeuronRefs(new TreeSet<>(), 1);
+            in.addOrChild(oe);
+            in.setModified();
+        } finally {
+            in.lock.releaseWriteLock();
+        }
 
         if(andMode) {
             lock.acquireWriteLock();
@@ -199,6 +213,7 @@ public class OrNode extends Node<OrNode, Activation> {
             andParents.add(oe);
             lock.releaseWriteLock();
         }
+        return true;
     }
 
 
@@ -209,17 +224,17 @@ public class OrNode extends Node<OrNode, Activation> {
 
         try {
             lock.acquireReadLock();
-            removeParents(threadId);
+            removeParents();
         } finally {
             lock.releaseReadLock();
         }
     }
 
 
-    public void removeParents(int threadId) {
+    public void removeParents() {
         for (OrEntry oe : andParents) {
             Node pn = oe.parent.get();
-            pn.changeNumberOfNeuronRefs(threadId, provider.model.visitedCounter.addAndGet(1), -1);
+            pn.changeNumberOfNeuronRefs(new TreeSet<>(), -1);
             pn.removeOrChild(oe);
             pn.setModified();
         }
@@ -228,11 +243,18 @@ public class OrNode extends Node<OrNode, Activation> {
 
 
     @Override
-    public void changeNumberOfNeuronRefs(int threadId, long v, int d) {
+    public void changeNumberOfNeuronRefs(Set<Node> visited, int d) {
         throw new UnsupportedOperationException();
     }
 
 
+    @Override
+    public long estimateSize() {
+        // The or-entries are shared with the parent nodes and are accounted for there.
+        return super.estimateSize() + MemoryEstimator.treeSet(andParents);
+    }
+
+
     public String logicToString() {
         StringBuilder sb = new StringBuilder();
         sb.append("OR[");
@@ -309,6 +331,13 @@ public class OrNode extends Node<OrNode, Activation> {
             this.child = child;
         }
 
+
+        public long estimateSize() {
+            return MemoryEstimator.shallowSize(OrEntry.class) +
+                    MemoryEstimator.array(synapseIds.length, 4) +
+                    MemoryEstimator.treeMap(revSynapseIds);
+        }
+
         @Override
         public void write(DataOutput out) throws IOException {
             out.writeInt(synapseIds.length);
@@ -370,11 +399,24 @@ public class OrNode extends Node<OrNode, Activation> {
             super(id, doc, node);
         }
 
+        @Override
+        public long estimateSize() {
+            return super.estimateSize() + MemoryEstimator.REFERENCE + MemoryEstimator.treeMap(inputs.size()) + inputs.size() * MemoryEstimator.BOXED_NUMBER;
+        }
+
         @Override
         public Activation getInputActivation(int i) {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public boolean endsBefore(int pos) {
+            for(Link l: inputs.values()) {
+                if(!l.input.endsBefore(pos)) return false;
+            }
+            return true;
+        }
+
         public Link link(OrEntry oe, NodeActivation<?> input) {
             Link l = new Link(oe, input, this);
             inputs.put(input.id, l);
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.neuron;
+
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+
+/**
+ * The {@code DeltaStripes} accumulate the weight and bias deltas of a synapse or neuron while several documents are
+ * trained concurrently. Each thread slot of the model adds to its own stripe, so that the threads rarely contend for
+ * the same entry. The additions are nevertheless atomic, since several documents may share a thread slot. The
+ * converter folds the stripes into the plain delta fields before it applies them.
+ *
+ * @author Lukas Molzberger
+ */
+public class DeltaStripes {
+
+    private final int numberOfValues;
+    private final int numberOfStripes;
+
+    // The doubles are stored as their raw long bits.
+    private final AtomicLongArray stripes;
+
+
+    public DeltaStripes(int numberOfValues, int numberOfStripes) {
+        this.numberOfValues = numberOfValues;
+        this.numberOfStripes = numberOfStripes;
+        stripes = new AtomicLongArray(numberOfValues * numberOfStripes);
+    }
+
+
+    /**
+     * Returns the stripes that are stored in the given field of the owner and creates them on first use, so that
+     * synapses and neurons that are never trained concurrently do not pay for them.
+     *
+     * @param owner
+     * @param field
+     * @param numberOfValues
+     * @param numberOfStripes
+     * @param <T>
+     * @return
+     */
+    public static <T> DeltaStripes getOrCreate(T owner, AtomicReferenceFieldUpdater<T, DeltaStripes> field, int numberOfValues, int numberOfStripes) {
+        DeltaStripes ds = field.get(owner);
+        if(ds == null) {
+            ds = new DeltaStripes(numberOfValues, numberOfStripes);
+            if(!field.compareAndSet(owner, null, ds)) {
+                ds = field.get(owner);
+            }
+        }
+        return ds;
+    }
+
+
+    public void add(int threadId, int valueIndex, double delta) {
+        if(delta == 0.0) return;
+
+        int i = (threadId % numberOfStripes) * numberOfValues + valueIndex;
+        long prev;
+        long next;
+        do {
+            prev = stripes.get(i);
+            next = Double.doubleToRawLongBits(Double.longBitsToDouble(prev) + delta);
+        } while(!stripes.compareAndSet(i, prev, next));
+    }
+
+
+    /**
+     * Returns the sum of all stripes of the given value and resets them. Deltas that are added concurrently are
+     * either contained in the result or remain for the next fold.
+     *
+     * @param valueIndex
+     * @return
+     */
+    public double fold(int valueIndex) {
+        double sum = 0.0;
+        for(int s = 0; s < numberOfStripes; s++) {
+            sum += Double.longBitsToDouble(stripes.getAndSet(s * numberOfValues + valueIndex, 0L));
+        }
+        return sum;
+    }
+
+
+    public double get(int valueIndex) {
+        double sum = 0.0;
+        for(int s = 0; s < numberOfStripes; s++) {
+            sum += Double.longBitsToDouble(stripes.get(s * numberOfValues + valueIndex));
+        }
+        return sum;
+    }
+}
@@ -29,6 +29,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.stream.Collectors;
 
 
@@ -69,6 +70,14 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
     public volatile double biasSum;
     public volatile double biasSumDelta;
 
+    private static final int BIAS_DELTA = 0;
+    private static final int BIAS_SUM_DELTA = 1;
+
+    // The deltas of the concurrent training mode, created on first use.
+    private volatile DeltaStripes deltaStripes;
+    private static final AtomicReferenceFieldUpdater<INeuron, DeltaStripes> DELTA_STRIPES =
+            AtomicReferenceFieldUpdater.newUpdater(INeuron.class, DeltaStripes.class, "deltaStripes");
+
     public volatile double metaBias = 0.0;
 
 
@@ -93,8 +102,62 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
 
 
     // A synapse is stored only in one direction, depending on the synapse weight.
-    public TreeMap<Synapse, Synapse> inputSynapses = new TreeMap<>(Synapse.INPUT_SYNAPSE_COMP);
-    public TreeMap<Synapse, Synapse> outputSynapses = new TreeMap<>(Synapse.OUTPUT_SYNAPSE_COMP);
+    public SynapseSet inputSynapses = new SynapseSet(Synapse.INPUT_SYNAPSE_COMP);
+    public SynapseSet outputSynapses = new SynapseSet(Synapse.OUTPUT_SYNAPSE_COMP);
+
+
+    public static final int SYNAPSE_RECURRENT = 1;
+    public static final int SYNAPSE_NEGATIVE = 2;
+    public static final int SYNAPSE_INACTIVE = 4;
+    public static final int SYNAPSE_PACKED = 8;
+
+    /**
+     * Packed copies of the committed parameters of all input synapses, indexed by the synapse id. They are used by
+     * the activation evaluation loop instead of the synapse objects themselves. The distance function codes are
+     * zero for no distance function and the ordinal plus one otherwise.
+     *
+     * The three arrays always have the same length and are published together through a single volatile write.
+     * The flags of every packed synapse contain {@code SYNAPSE_PACKED}. A synapse that is already linked but not
+     * packed yet is packed on demand by {@code getInputSynapseArrays}.
+     */
+    public static class SynapseArrays {
+        public final double[] weights;
+        public final byte[] flags;
+        public final byte[] distanceFunctions;
+
+
+        public SynapseArrays(int length) {
+            this(new double[length], new byte[length], new byte[length]);
+        }
+
+
+        private SynapseArrays(double[] weights, byte[] flags, byte[] distanceFunctions) {
+            this.weights = weights;
+            this.flags = flags;
+            this.distanceFunctions = distanceFunctions;
+        }
+
+
+        public int length() {
+            return weights.length;
+        }
+
+
+        public boolean contains(int synapseId) {
+            return synapseId < flags.length && (flags[synapseId] & SYNAPSE_PACKED) != 0;
+        }
+
+
+        private SynapseArrays copyOf(int length) {
+            return new SynapseArrays(
+                    Arrays.copyOf(weights, length),
+                    Arrays.copyOf(flags, length),
+                    Arrays.copyOf(distanceFunctions, length)
+            );
+        }
+    }
+
+    public volatile SynapseArrays inputSynapseArrays = new SynapseArrays(0);
 
     public Provider<InputNode> outputNode;
 
@@ -103,6 +166,12 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
 
     public ReadWriteLock lock = new ReadWriteLock();
 
+    // Serializes the conversions of this neuron, so that concurrent commits neither lose nor repeat deltas.
+    public final Object converterLock = new Object();
+
+    // The number of conversions of this neuron, which is used to detect decisions that are based on outdated weights.
+    public volatile int commitCounter;
+
 
     public ThreadState[] threads;
 
@@ -122,6 +191,15 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
             activations = new TreeMap<>(BEGIN_COMP);
             activationsEnd = new TreeMap<>(END_COMP);
         }
+
+
+        public long estimateSize() {
+            // Both maps share the same keys.
+            return MemoryEstimator.shallowSize(ThreadState.class) +
+                    MemoryEstimator.treeMap(activations) +
+                    MemoryEstimator.treeMap(activationsEnd) +
+                    activations.size() * MemoryEstimator.shallowSize(ActKey.class);
+        }
     }
 
 
@@ -205,6 +283,22 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
      * @param input
      */
     public Activation addInput(Document doc, Activation.Builder input) {
+        Activation act = registerInput(doc, input);
+
+        doc.propagate();
+
+        return act;
+    }
+
+
+    /**
+     * Registers an input activation and queues it for the propagation, but does not yet propagate it through the
+     * network. The propagation is performed by the next call of {@code Document.propagate}.
+     *
+     * @param doc   The current document
+     * @param input
+     */
+    public Activation registerInput(Document doc, Activation.Builder input) {
         assert input.range.begin <= input.range.end;
 
         Map.Entry<ActKey, Activation> me = getThreadState(doc.threadId, true).activations.higherEntry(new ActKey(input.range, Integer.MIN_VALUE));
@@ -236,8 +330,6 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
 
         propagate(act);
 
-        doc.propagate();
-
         return act;
     }
 
@@ -317,6 +409,21 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
     }
 
 
+    /**
+     * Removes the activations of the given document that end at or before the given position.
+     *
+     * @param doc
+     * @param pos
+     */
+    public void removeActivationsBefore(Document doc, int pos) {
+        ThreadState th = getThreadState(doc.threadId, false);
+        if (th == null) return;
+        th.activations.values().removeIf(act -> act.endsBefore(pos));
+
+        if (th.activationsEnd != null) th.activationsEnd.values().removeIf(act -> act.endsBefore(pos));
+    }
+
+
     public int compareTo(INeuron n) {
         if (provider.id < n.provider.id) return -1;
         else if (provider.id > n.provider.id) return 1;
@@ -432,15 +539,17 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
         }
 
         numberOfInputSynapses = in.readInt();
+        ArrayList<Synapse> syns = new ArrayList<>();
         while (in.readBoolean()) {
-            Synapse syn = Synapse.read(in, m);
-            inputSynapses.put(syn, syn);
+            syns.add(Synapse.read(in, m));
         }
+        inputSynapses.addAll(syns);
 
+        syns.clear();
         while (in.readBoolean()) {
-            Synapse syn = Synapse.read(in, m);
-            outputSynapses.put(syn, syn);
+            syns.add(Synapse.read(in, m));
         }
+        outputSynapses.addAll(syns);
 
         int l = in.readInt();
         if(l > 0) {
@@ -505,8 +614,113 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
                 s.input.addInMemoryOutputSynapse(s);
             }
         }
+
+        for (Synapse s : inputSynapses.values()) {
+            updateInputSynapse(s);
+        }
+        provider.lock.acquireReadLock();
+        for (Synapse s : provider.inMemoryInputSynapses.values()) {
+            updateInputSynapse(s);
+        }
+        provider.lock.releaseReadLock();
+    }
+
+    /**
+     * Copies the committed weight, the flags and the distance function of the given input synapse into the packed
+     * synapse arrays of this neuron.
+     *
+     * @param s An input synapse of this neuron.
+     */
+    public synchronized void updateInputSynapse(Synapse s) {
+        int id = s.id;
+        SynapseArrays sa = inputSynapseArrays;
+        if(id >= sa.length()) {
+            sa = sa.copyOf(Math.max(id + 1, 2 * sa.length()));
+        }
+
+        sa.flags[id] = (byte) (
+                SYNAPSE_PACKED |
+                (s.key.isRecurrent ? SYNAPSE_RECURRENT : 0) |
+                (s.isNegative() ? SYNAPSE_NEGATIVE : 0) |
+                (s.inactive ? SYNAPSE_INACTIVE : 0)
+        );
+        sa.distanceFunctions[id] = (byte) (s.distanceFunction != null ? s.distanceFunction.ordinal() + 1 : 0);
+        sa.weights[id] = s.weight;
+
+        // Also republishes the updated entries of an existing holder.
+        inputSynapseArrays = sa;
+    }
+
+
+    /**
+     * Returns the packed synapse arrays and makes sure that they contain the given input synapse, which might have
+     * been linked before its parameters were packed.
+     *
+     * @param s An input synapse of this neuron.
+     * @return
+     */
+    public SynapseArrays getInputSynapseArrays(Synapse s) {
+        SynapseArrays sa = inputSynapseArrays;
+        if(sa.contains(s.id)) {
+            return sa;
+        }
+        updateInputSynapse(s);
+        return inputSynapseArrays;
+    }
+
+
+    /**
+     * Estimates the number of bytes retained by this neuron, including the synapses that are stored within this
+     * neuron. Since every synapse is stored in only one of its two neurons, summing up the estimates of all
+     * neurons counts each synapse exactly once. The activations are accounted for by the documents.
+     *
+     * @return
+     */
+    @Override
+    public long estimateSize() {
+        long size = MemoryEstimator.shallowSize(getClass());
+        size += MemoryEstimator.string(label);
+        size += MemoryEstimator.string(outputText);
+        size += MemoryEstimator.READ_WRITE_LOCK;
+        size += MemoryEstimator.object(0, 0);
+
+        size += inputSynapses.estimateSize();
+        for(Synapse s: inputSynapses) {
+            size += s.estimateSize();
+        }
+        size += outputSynapses.estimateSize();
+        for(Synapse s: outputSynapses) {
+            size += s.estimateSize();
+        }
+
+        // The in-memory synapse sets of the provider only reference synapses that are stored in other neurons.
+        size += provider.inputSynapsesById.estimateSize();
+        size += provider.inMemoryInputSynapses.estimateSize();
+        size += provider.inMemoryOutputSynapses.estimateSize();
+
+        SynapseArrays sa = inputSynapseArrays;
+        size += MemoryEstimator.shallowSize(SynapseArrays.class);
+        size += MemoryEstimator.array(sa.length(), 8);
+        size += MemoryEstimator.array(sa.length(), 1);
+        size += MemoryEstimator.array(sa.length(), 1);
+
+        if(outputRelations != null) {
+            size += MemoryEstimator.treeMap(outputRelations);
+            for(Relation r: outputRelations.values()) {
+                size += MemoryEstimator.BOXED_NUMBER + r.estimateSize();
+            }
+        }
+
+        size += MemoryEstimator.array(threads.length, MemoryEstimator.REFERENCE);
+        for(ThreadState th: threads) {
+            if(th != null) {
+                size += th.estimateSize();
+            }
+        }
+        return size;
     }
 
+
     public void setBias(double b) {
         double newBiasDelta = b - bias;
         biasSumDelta += newBiasDelta - biasDelta;
@@ -515,8 +729,38 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
 
 
     public void changeBias(double bd) {
-        biasDelta += bd;
-        biasSumDelta += bd;
+        changeBias(null, bd);
+    }
+
+
+    public void changeBias(Document doc, double bd) {
+        Model m = provider.model;
+        if(m.concurrentTraining) {
+            int threadId = doc != null ? doc.threadId : m.defaultThreadId;
+            DeltaStripes ds = DeltaStripes.getOrCreate(this, DELTA_STRIPES, 2, m.numberOfThreads);
+            ds.add(threadId, BIAS_DELTA, bd);
+            ds.add(threadId, BIAS_SUM_DELTA, bd);
+        } else {
+            biasDelta += bd;
+            biasSumDelta += bd;
+        }
+    }
+
+
+    void addBiasSumDelta(int threadId, double bsd) {
+        DeltaStripes.getOrCreate(this, DELTA_STRIPES, 2, provider.model.numberOfThreads).add(threadId, BIAS_SUM_DELTA, bsd);
+    }
+
+
+    /**
+     * Moves the deltas of the concurrent training mode into the bias deltas of this neuron.
+     */
+    public void foldDeltas() {
+        DeltaStripes ds = deltaStripes;
+        if(ds == null) return;
+
+        biasDelta += ds.fold(BIAS_DELTA);
+        biasSumDelta += ds.fold(BIAS_SUM_DELTA);
     }
 
 
@@ -555,6 +799,20 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
 
 
     public static boolean update(int threadId, Document doc, Neuron pn, Double bias, Collection<Synapse> modifiedSynapses) {
+        prepareUpdate(pn, bias, modifiedSynapses);
+
+        return Converter.convert(threadId, doc, pn.get(), modifiedSynapses);
+    }
+
+
+    /**
+     * Applies the bias and links the modified synapses without converting the neuron into the pattern lattice yet.
+     *
+     * @param pn
+     * @param bias
+     * @param modifiedSynapses
+     */
+    public static void prepareUpdate(Neuron pn, Double bias, Collection<Synapse> modifiedSynapses) {
         INeuron n = pn.get();
 
         if(bias != null) {
@@ -563,8 +821,6 @@ public class INeuron extends AbstractNode<Neuron, Activation> implements Compara
 
         // s.link requires an updated n.biasSumDelta value.
         modifiedSynapses.forEach(s -> s.link());
-
-        return Converter.convert(threadId, doc, n, modifiedSynapses);
     }
 
 
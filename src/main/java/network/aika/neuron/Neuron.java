@@ -42,9 +42,9 @@ public class Neuron extends Provider<INeuron> {
 
     public ReadWriteLock lock = new ReadWriteLock();
 
-    public NavigableMap<Integer, Synapse> inputSynapsesById = new TreeMap<>();
-    public NavigableMap<Synapse, Synapse> inMemoryInputSynapses = new TreeMap<>(Synapse.INPUT_SYNAPSE_COMP);
-    public NavigableMap<Synapse, Synapse> inMemoryOutputSynapses = new TreeMap<>(Synapse.OUTPUT_SYNAPSE_COMP);
+    public SynapseIdMap inputSynapsesById = new SynapseIdMap();
+    public SynapseSet inMemoryInputSynapses = new SynapseSet(Synapse.INPUT_SYNAPSE_COMP);
+    public SynapseSet inMemoryOutputSynapses = new SynapseSet(Synapse.OUTPUT_SYNAPSE_COMP);
 
 
     public Neuron(Model m, int id) {
@@ -206,7 +206,23 @@ public class Neuron extends Provider<INeuron> {
 
 
     public boolean init(Document doc, double bias, ActivationFunction activationFunction, INeuron.Type type, List<Synapse.Builder> inputs) {
+        List<Synapse> inputSynapses = prepareInit(doc, activationFunction, type, inputs);
 
+        return INeuron.update(model.defaultThreadId, doc, this, bias, inputSynapses);
+    }
+
+
+    /**
+     * Creates the input synapses and sets the activation function and the type of this neuron, but leaves the
+     * bias and the conversion into the pattern lattice to the caller.
+     *
+     * @param doc
+     * @param activationFunction
+     * @param type
+     * @param inputs
+     * @return The created input synapses.
+     */
+    public List<Synapse> prepareInit(Document doc, ActivationFunction activationFunction, INeuron.Type type, List<Synapse.Builder> inputs) {
         int maxSynapseId = -1;
         for (Synapse.Builder input : inputs) {
             if(input.synapseId != null) {
@@ -253,7 +269,7 @@ public class Neuron extends Provider<INeuron> {
             in.type = type;
         }
 
-        return INeuron.update(model.defaultThreadId, doc, this, bias, inputSynapses);
+        return inputSynapses;
     }
 
 
@@ -299,9 +315,14 @@ public class Neuron extends Provider<INeuron> {
 
     public void addInMemoryInputSynapse(Synapse s) {
         lock.acquireWriteLock();
-        inMemoryInputSynapses.put(s, s);
-        inputSynapsesById.put(s.id, s);
+        inMemoryInputSynapses.add(s);
+        inputSynapsesById.put(s);
         lock.releaseWriteLock();
+
+        INeuron n = getIfNotSuspended();
+        if(n != null) {
+            n.updateInputSynapse(s);
+        }
     }
 
 
@@ -315,7 +336,7 @@ public class Neuron extends Provider<INeuron> {
 
     public void addInMemoryOutputSynapse(Synapse s) {
         lock.acquireWriteLock();
-        inMemoryOutputSynapses.put(s, s);
+        inMemoryOutputSynapses.add(s);
         lock.releaseWriteLock();
     }
 
@@ -31,6 +31,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * The {@code Synapse} class connects two neurons with each other. When propagating an activation signal, the
@@ -112,6 +113,14 @@ public class Synapse implements Writable {
 
     public double biasDelta;
 
+    private static final int WEIGHT_DELTA = 0;
+    private static final int BIAS_DELTA = 1;
+
+    // The deltas of the concurrent training mode, created on first use.
+    private volatile DeltaStripes deltaStripes;
+    private static final AtomicReferenceFieldUpdater<Synapse, DeltaStripes> DELTA_STRIPES =
+            AtomicReferenceFieldUpdater.newUpdater(Synapse.class, DeltaStripes.class, "deltaStripes");
+
     public boolean toBeDeleted;
 
     /**
@@ -140,6 +149,27 @@ public class Synapse implements Writable {
     }
 
 
+    /**
+     * Estimates the number of bytes retained by this synapse. The keys are shared between all synapses and are
+     * therefore not included.
+     *
+     * @return
+     */
+    public long estimateSize() {
+        long size = MemoryEstimator.shallowSize(Synapse.class) + MemoryEstimator.BOXED_NUMBER;
+        if(relations != null) {
+            size += MemoryEstimator.treeMap(relations);
+            for(Relation r: relations.values()) {
+                size += MemoryEstimator.BOXED_NUMBER + r.estimateSize();
+            }
+        }
+        if(meta != null) {
+            size += MemoryEstimator.shallowSize(meta.getClass());
+        }
+        return size;
+    }
+
+
     public void link() {
         INeuron in = input.get();
         INeuron out = output.get();
@@ -150,24 +180,26 @@ public class Synapse implements Writable {
         (dir ? out : in).lock.acquireWriteLock();
 
         in.provider.lock.acquireWriteLock();
-        in.provider.inMemoryOutputSynapses.put(this, this);
+        in.provider.inMemoryOutputSynapses.add(this);
         in.provider.lock.releaseWriteLock();
 
         out.provider.lock.acquireWriteLock();
         reverseLinkRelations(out);
 
-        out.provider.inMemoryInputSynapses.put(this, this);
-        out.provider.inputSynapsesById.put(id, this);
+        out.provider.inMemoryInputSynapses.add(this);
+        out.provider.inputSynapsesById.put(this);
         out.provider.lock.releaseWriteLock();
 
+        out.updateInputSynapse(this);
+
         removeLinkInternal(in, out);
 
         if(isConjunction(true, false)) {
-            out.inputSynapses.put(this, this);
+            out.inputSynapses.add(this);
             isConjunction = true;
             out.setModified();
         } else {
-            in.outputSynapses.put(this, this);
+            in.outputSynapses.add(this);
             isConjunction = false;
             in.setModified();
         }
@@ -212,11 +244,11 @@ public class Synapse implements Writable {
             (dir ? out : in).lock.acquireWriteLock();
 
             if (newIsConjunction) {
-                out.inputSynapses.put(this, this);
+                out.inputSynapses.add(this);
                 isConjunction = true;
                 out.setModified();
             } else {
-                in.outputSynapses.put(this, this);
+                in.outputSynapses.add(this);
                 isConjunction = false;
                 in.setModified();
             }
@@ -254,12 +286,12 @@ public class Synapse implements Writable {
 
     private void removeLinkInternal(INeuron in, INeuron out) {
         if(isConjunction(false, false)) {
-            if(out.inputSynapses.remove(this) != null) {
+            if(out.inputSynapses.remove(this)) {
                 out.setModified();
                 out.numberOfInputSynapses--;
             }
         } else {
-            if(in.outputSynapses.remove(this) != null) {
+            if(in.outputSynapses.remove(this)) {
                 in.setModified();
                 out.numberOfInputSynapses--;
             }
@@ -268,8 +300,8 @@ public class Synapse implements Writable {
 
 
     public boolean exists() {
-        if(input.get().outputSynapses.containsKey(this)) return true;
-        if(output.get().inputSynapses.containsKey(this)) return true;
+        if(input.get().outputSynapses.contains(this)) return true;
+        if(output.get().inputSynapses.contains(this)) return true;
         return false;
     }
 
@@ -287,16 +319,40 @@ public class Synapse implements Writable {
 
 
     public void updateDelta(Document doc, double weightDelta, double biasDelta) {
-        this.weightDelta += weightDelta;
-        this.biasDelta += biasDelta;
-        output.get().biasSumDelta += biasDelta;
-        relink();
+        Model m = output.model;
+        if(m.concurrentTraining) {
+            int threadId = doc != null ? doc.threadId : m.defaultThreadId;
+            DeltaStripes ds = DeltaStripes.getOrCreate(this, DELTA_STRIPES, 2, m.numberOfThreads);
+            ds.add(threadId, WEIGHT_DELTA, weightDelta);
+            ds.add(threadId, BIAS_DELTA, biasDelta);
+            output.get().addBiasSumDelta(threadId, biasDelta);
+            // The synapse is relinked once the deltas are folded.
+        } else {
+            this.weightDelta += weightDelta;
+            this.biasDelta += biasDelta;
+            output.get().biasSumDelta += biasDelta;
+            relink();
+        }
         if(doc != null) {
             doc.notifyWeightModified(this);
         }
     }
 
 
+    /**
+     * Moves the deltas of the concurrent training mode into the weight and bias deltas of this synapse. The deltas
+     * of the output neuron need to be folded first.
+     */
+    public void foldDeltas() {
+        DeltaStripes ds = deltaStripes;
+        if(ds == null) return;
+
+        weightDelta += ds.fold(WEIGHT_DELTA);
+        biasDelta += ds.fold(BIAS_DELTA);
+        relink();
+    }
+
+
     public void update(Document doc, double weight, double bias) {
         this.weightDelta = weight - this.weight;
         double newBiasDelta = bias - this.bias;
@@ -310,6 +366,16 @@ public class Synapse implements Writable {
     }
 
 
+    public void setInactive(boolean inactive) {
+        this.inactive = inactive;
+
+        INeuron out = output.getIfNotSuspended();
+        if(out != null) {
+            out.updateInputSynapse(this);
+        }
+    }
+
+
     public boolean isNegative() {
         return weight < 0.0;
     }
@@ -397,12 +463,11 @@ public class Synapse implements Writable {
         if(synapseId != null) {
             synapse = outputNeuron.inputSynapsesById.get(synapseId);
         } else {
-            Map.Entry<Synapse, Synapse> me = outputNeuron.inMemoryInputSynapses.subMap(
-                    new Synapse(inputNeuron, outputNeuron, Integer.MIN_VALUE, k, null, null), true,
-                    new Synapse(inputNeuron, outputNeuron, Integer.MAX_VALUE, k, null, null), true
-            ).firstEntry();
-            if(me != null) {
-                synapse = me.getKey();
+            Synapse s = outputNeuron.inMemoryInputSynapses.ceiling(
+                    new Synapse(inputNeuron, outputNeuron, Integer.MIN_VALUE, k, null, null)
+            );
+            if(s != null && s.input.compareTo(inputNeuron) == 0 && s.key.compareTo(k) == 0) {
+                synapse = s;
             }
         }
         outputNeuron.lock.releaseWriteLock();
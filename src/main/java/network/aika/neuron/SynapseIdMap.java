@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.neuron;
+
+
+import network.aika.MemoryEstimator;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * The {@code SynapseIdMap} maps the synapse ids of the input synapses of a neuron to the synapse objects. It is an
+ * open addressing hash table with linear probing that uses the id stored in the synapse itself as key, so that no
+ * boxed keys or entry objects are required.
+ *
+ * Lookups do not need any locking. The slots are written with volatile semantics, so that a lookup that finds a
+ * synapse also sees its fields. A removal replaces the synapse by a tombstone in place, which keeps the probe
+ * sequences of the other synapses intact for concurrent lookups. The tombstones are reused by later insertions and
+ * are dropped whenever the table is rebuilt.
+ *
+ * @author Lukas Molzberger
+ */
+public class SynapseIdMap {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private static final Object TOMBSTONE = new Object();
+
+    private volatile AtomicReferenceArray<Object> table = new AtomicReferenceArray<>(MIN_CAPACITY);
+    private int size;
+    private int tombstones;
+
+
+    private static int index(int id, int mask) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+
+    public Synapse get(int id) {
+        AtomicReferenceArray<Object> t = table;
+        int mask = t.length() - 1;
+        for(int i = index(id, mask); ; i = (i + 1) & mask) {
+            Object o = t.get(i);
+            if(o == null) return null;
+            if(o != TOMBSTONE && ((Synapse) o).id == id) return (Synapse) o;
+        }
+    }
+
+
+    public synchronized Synapse put(Synapse s) {
+        AtomicReferenceArray<Object> t = table;
+        int mask = t.length() - 1;
+        int free = -1;
+        int i = index(s.id, mask);
+        for(Object o; (o = t.get(i)) != null; i = (i + 1) & mask) {
+            if(o == TOMBSTONE) {
+                if(free < 0) free = i;
+            } else if(((Synapse) o).id.intValue() == s.id.intValue()) {
+                t.set(i, s);
+                return (Synapse) o;
+            }
+        }
+
+        if(free >= 0) {
+            t.set(free, s);
+            tombstones--;
+        } else if(2 * (size + tombstones + 1) > t.length()) {
+            // The capacity is never reduced, so that alternating insertions and removals do not rebuild the table
+            // over and over again.
+            table = rehash(t, Math.max(size + 1, t.length() / 2));
+            return put(s);
+        } else {
+            t.set(i, s);
+        }
+        size++;
+        return null;
+    }
+
+
+    public synchronized Synapse remove(int id) {
+        AtomicReferenceArray<Object> t = table;
+        int mask = t.length() - 1;
+        for(int i = index(id, mask); ; i = (i + 1) & mask) {
+            Object o = t.get(i);
+            if(o == null) return null;
+            if(o != TOMBSTONE && ((Synapse) o).id == id) {
+                t.set(i, TOMBSTONE);
+                size--;
+                tombstones++;
+                return (Synapse) o;
+            }
+        }
+    }
+
+
+    /**
+     * Builds a new table without tombstones that has room for the given number of synapses.
+     */
+    private AtomicReferenceArray<Object> rehash(AtomicReferenceArray<Object> t, int minSize) {
+        int capacity = MIN_CAPACITY;
+        while(2 * minSize > capacity) {
+            capacity *= 2;
+        }
+
+        AtomicReferenceArray<Object> nt = new AtomicReferenceArray<>(capacity);
+        int mask = capacity - 1;
+        for(int j = 0; j < t.length(); j++) {
+            Object o = t.get(j);
+            if(o != null && o != TOMBSTONE) {
+                int i = index(((Synapse) o).id, mask);
+                while(nt.get(i) != null) {
+                    i = (i + 1) & mask;
+                }
+                nt.set(i, o);
+            }
+        }
+        tombstones = 0;
+        return nt;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public long estimateSize() {
+        return MemoryEstimator.shallowSize(SynapseIdMap.class) +
+                MemoryEstimator.object(1, 0) +
+                MemoryEstimator.array(table.length(), MemoryEstimator.REFERENCE);
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.neuron;
+
+
+import network.aika.MemoryEstimator;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+
+/**
+ * The {@code SynapseSet} is a sorted set of synapses that is backed by arrays. Compared to a tree map it needs only
+ * a single reference per synapse. Every modification publishes a new immutable snapshot, so that readers always
+ * iterate over a consistent state without having to acquire a lock.
+ *
+ * <p>A snapshot consists of a large sorted main array and a small sorted array of recently added synapses. Single
+ * inserts only copy the small array, which is merged into the main array once it exceeds the square root of the
+ * main array's size. Adding n synapses one by one therefore costs O(n * sqrt(n)) instead of O(n^2).
+ *
+ * @author Lukas Molzberger
+ */
+public class SynapseSet implements Iterable<Synapse> {
+
+    private static final Synapse[] EMPTY = new Synapse[0];
+
+    private static final int MIN_PENDING_SIZE = 32;
+
+    private final Comparator<Synapse> comparator;
+
+    private volatile Snapshot snapshot = new Snapshot(EMPTY, EMPTY);
+
+
+    private static class Snapshot {
+        final Synapse[] main;
+        final Synapse[] pending;
+
+        Snapshot(Synapse[] main, Synapse[] pending) {
+            this.main = main;
+            this.pending = pending;
+        }
+
+        int size() {
+            return main.length + pending.length;
+        }
+    }
+
+
+    public SynapseSet(Comparator<Synapse> comparator) {
+        this.comparator = comparator;
+    }
+
+
+    /**
+     * Adds the given synapse to this set. An already contained synapse that is equal according to the comparator
+     * is replaced by the given one.
+     *
+     * @param s
+     * @return true if the set did not already contain an equal synapse.
+     */
+    public synchronized boolean add(Synapse s) {
+        Snapshot sn = snapshot;
+        int i = Arrays.binarySearch(sn.main, s, comparator);
+        if(i >= 0) {
+            if(sn.main[i] != s) {
+                Synapse[] na = sn.main.clone();
+                na[i] = s;
+                snapshot = new Snapshot(na, sn.pending);
+            }
+            return false;
+        }
+
+        i = Arrays.binarySearch(sn.pending, s, comparator);
+        if(i >= 0) {
+            if(sn.pending[i] != s) {
+                Synapse[] np = sn.pending.clone();
+                np[i] = s;
+                snapshot = new Snapshot(sn.main, np);
+            }
+            return false;
+        }
+
+        Synapse[] np = insert(sn.pending, -(i + 1), s);
+        if(np.length > Math.max(MIN_PENDING_SIZE, (int) Math.sqrt(sn.main.length))) {
+            snapshot = new Snapshot(merge(sn.main, np), EMPTY);
+        } else {
+            snapshot = new Snapshot(sn.main, np);
+        }
+        return true;
+    }
+
+
+    /**
+     * Adds all the given synapses at once. This is considerably cheaper than adding them one by one, since the
+     * backing array is only sorted and replaced once.
+     *
+     * @param syns
+     */
+    public synchronized void addAll(Collection<Synapse> syns) {
+        if(syns.isEmpty()) return;
+
+        Synapse[] a = getMerged();
+        Synapse[] na = Arrays.copyOf(a, a.length + syns.size());
+        int i = a.length;
+        for(Synapse s: syns) {
+            na[i++] = s;
+        }
+        // The sort is stable, therefore later synapses replace earlier equal ones.
+        Arrays.sort(na, comparator);
+
+        int l = 0;
+        for(i = 0; i < na.length; i++) {
+            if(l > 0 && comparator.compare(na[l - 1], na[i]) == 0) {
+                na[l - 1] = na[i];
+            } else {
+                na[l++] = na[i];
+            }
+        }
+        snapshot = new Snapshot(l < na.length ? Arrays.copyOf(na, l) : na, EMPTY);
+    }
+
+
+    /**
+     *
+     * @param s
+     * @return true if the set contained the given synapse.
+     */
+    public synchronized boolean remove(Synapse s) {
+        Snapshot sn = snapshot;
+        int i = Arrays.binarySearch(sn.pending, s, comparator);
+        if(i >= 0) {
+            snapshot = new Snapshot(sn.main, delete(sn.pending, i));
+            return true;
+        }
+
+        i = Arrays.binarySearch(sn.main, s, comparator);
+        if(i < 0) return false;
+
+        snapshot = new Snapshot(delete(sn.main, i), sn.pending);
+        return true;
+    }
+
+
+    private static Synapse[] insert(Synapse[] a, int i, Synapse s) {
+        Synapse[] na = new Synapse[a.length + 1];
+        System.arraycopy(a, 0, na, 0, i);
+        na[i] = s;
+        System.arraycopy(a, i, na, i + 1, a.length - i);
+        return na;
+    }
+
+
+    private static Synapse[] delete(Synapse[] a, int i) {
+        Synapse[] na = new Synapse[a.length - 1];
+        System.arraycopy(a, 0, na, 0, i);
+        System.arraycopy(a, i + 1, na, i, a.length - (i + 1));
+        return na;
+    }
+
+
+    private Synapse[] merge(Synapse[] a, Synapse[] b) {
+        Synapse[] r = new Synapse[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while(i < a.length && j < b.length) {
+            r[k++] = comparator.compare(a[i], b[j]) <= 0 ? a[i++] : b[j++];
+        }
+        while(i < a.length) r[k++] = a[i++];
+        while(j < b.length) r[k++] = b[j++];
+        return r;
+    }
+
+
+    /**
+     * Returns a single sorted array of all synapses. If there are pending synapses, they are merged into the main
+     * array and the merged snapshot is published, so that subsequent readers can use it directly.
+     */
+    private Synapse[] getMerged() {
+        Snapshot sn = snapshot;
+        if(sn.pending.length == 0) {
+            return sn.main;
+        }
+
+        synchronized (this) {
+            sn = snapshot;
+            if(sn.pending.length == 0) {
+                return sn.main;
+            }
+            Synapse[] merged = merge(sn.main, sn.pending);
+            snapshot = new Snapshot(merged, EMPTY);
+            return merged;
+        }
+    }
+
+
+    public boolean contains(Synapse s) {
+        Snapshot sn = snapshot;
+        return Arrays.binarySearch(sn.main, s, comparator) >= 0 || Arrays.binarySearch(sn.pending, s, comparator) >= 0;
+    }
+
+
+    /**
+     * Returns the least synapse that is greater than or equal to the given synapse.
+     *
+     * @param s
+     * @return
+     */
+    public Synapse ceiling(Synapse s) {
+        Snapshot sn = snapshot;
+        return min(ceiling(sn.main, s), ceiling(sn.pending, s));
+    }
+
+
+    private Synapse ceiling(Synapse[] a, Synapse s) {
+        int i = Arrays.binarySearch(a, s, comparator);
+        if(i < 0) {
+            i = -(i + 1);
+        }
+        return i < a.length ? a[i] : null;
+    }
+
+
+    private Synapse min(Synapse a, Synapse b) {
+        if(a == null) return b;
+        if(b == null) return a;
+        return comparator.compare(a, b) <= 0 ? a : b;
+    }
+
+
+    public Synapse first() {
+        Snapshot sn = snapshot;
+        return min(sn.main.length > 0 ? sn.main[0] : null, sn.pending.length > 0 ? sn.pending[0] : null);
+    }
+
+
+    public int size() {
+        return snapshot.size();
+    }
+
+
+    public boolean isEmpty() {
+        return snapshot.size() == 0;
+    }
+
+
+    /**
+     * Returns an unmodifiable snapshot of the synapses in this set.
+     *
+     * @return
+     */
+    public Collection<Synapse> values() {
+        return Collections.unmodifiableList(Arrays.asList(getMerged()));
+    }
+
+
+    public Stream<Synapse> stream() {
+        return Arrays.stream(getMerged());
+    }
+
+
+    public long estimateSize() {
+        Snapshot sn = snapshot;
+        return MemoryEstimator.shallowSize(SynapseSet.class) +
+                MemoryEstimator.shallowSize(Snapshot.class) +
+                MemoryEstimator.array(sn.main.length, MemoryEstimator.REFERENCE) +
+                MemoryEstimator.array(sn.pending.length, MemoryEstimator.REFERENCE);
+    }
+
+
+    @Override
+    public Iterator<Synapse> iterator() {
+        return values().iterator();
+    }
+}
@@ -1,6 +1,8 @@
 package network.aika.neuron.activation;
 
+import network.aika.DistanceFunction;
 import network.aika.Document;
+import network.aika.MemoryEstimator;
 import network.aika.Utils;
 import network.aika.lattice.OrNode;
 import network.aika.lattice.OrNode.OrActivation;
@@ -17,6 +19,9 @@ import static network.aika.neuron.activation.SearchNode.Decision.SELECTED;
 import static network.aika.neuron.activation.Activation.Link.INPUT_COMP;
 import static network.aika.neuron.activation.Activation.Link.OUTPUT_COMP;
 import static network.aika.neuron.INeuron.ALLOW_WEAK_NEGATIVE_WEIGHTS;
+import static network.aika.neuron.INeuron.SYNAPSE_INACTIVE;
+import static network.aika.neuron.INeuron.SYNAPSE_NEGATIVE;
+import static network.aika.neuron.INeuron.SYNAPSE_RECURRENT;
 
 
 /**
@@ -37,6 +42,7 @@ import static network.aika.neuron.INeuron.ALLOW_WEAK_NEGATIVE_WEIGHTS;
 public final class Activation extends OrActivation {
     public static final Comparator<Activation> ACTIVATION_ID_COMP = Comparator.comparingInt(act -> act.id);
     public static int MAX_SELF_REFERENCING_DEPTH = 5;
+    public static boolean ENABLE_SELF_REFERENCING_CACHE = true;
 
     private static final Logger log = LoggerFactory.getLogger(Activation.class);
 
@@ -51,6 +57,8 @@ public final class Activation extends OrActivation {
 
     public double upperBound;
     public double lowerBound;
+    // The upper bound of the net input before the activation function is applied.
+    public double netUpperBound;
     public double maxWeight;
 
     public Rounds rounds = new Rounds();
@@ -81,6 +89,12 @@ public final class Activation extends OrActivation {
 
     private List<Activation> conflicts;
 
+    private int[] identityAncestors;
+    private int[] identityRoots;
+
+    private static final int[] IN_PROGRESS = new int[0];
+    private static final int[] CYCLIC = new int[0];
+
 
     public Activation(int id, Document doc, OrNode n) {
         super(id, doc, n);
@@ -92,6 +106,51 @@ public final class Activation extends OrActivation {
     }
 
 
+    /**
+     * Estimates the number of bytes retained by this activation. The neural links are accounted for by the output
+     * activation.
+     *
+     * @return
+     */
+    @Override
+    public long estimateSize() {
+        // The shallow size of this activation is computed by the node activation.
+        long size = super.estimateSize();
+        if(range != null) {
+            size += MemoryEstimator.shallowSize(Range.class);
+        }
+        if(sequence != null) {
+            size += MemoryEstimator.BOXED_NUMBER;
+        }
+
+        size += MemoryEstimator.treeSet(selectedNeuronInputs);
+        size += MemoryEstimator.treeMap(neuronInputs) + neuronInputs.size() * MemoryEstimator.shallowSize(Link.class);
+        size += MemoryEstimator.treeSet(neuronOutputs);
+
+        size += rounds.estimateSize();
+        if(finalRounds != rounds) {
+            size += finalRounds.estimateSize();
+        }
+        if(currentStateChange != null) {
+            size += MemoryEstimator.shallowSize(StateChange.class);
+        }
+        if(candidate != null) {
+            size += MemoryEstimator.shallowSize(Candidate.class) + 3 * MemoryEstimator.array(3, 4);
+            if(candidate.conflicts != null) {
+                size += MemoryEstimator.array(candidate.conflicts.length, 4);
+            }
+        }
+        size += MemoryEstimator.arrayList(conflicts);
+        if(identityAncestors != null && identityAncestors != CYCLIC && identityAncestors != IN_PROGRESS) {
+            size += MemoryEstimator.array(identityAncestors.length, 4);
+        }
+        if(identityRoots != null) {
+            size += MemoryEstimator.array(identityRoots.length, 4);
+        }
+        return size;
+    }
+
+
     public void setTargetValue(Double targetValue) {
         this.targetValue = targetValue;
         if (targetValue != null) {
@@ -132,11 +191,130 @@ public final class Activation extends OrActivation {
                     selectedNeuronInputs.add(sa);
                 }
                 neuronInputs.put(sa, sa);
+                doc.linkVersion++;
+                if(sa.synapse.key.identity) {
+                    invalidateIdentityAncestry();
+                }
                 break;
         }
     }
 
 
+    /**
+     * Returns the sorted ids of all the activations this activation is reachable from through identity links,
+     * including this activation itself. The ids are computed lazily and are invalidated whenever a new identity
+     * link is added to this activation or to one of its ancestors.
+     *
+     * @return The ids, or {@code null} if the ancestry contains a cycle of recurrent identity links. In that case
+     * the identity links have to be traversed instead.
+     */
+    public int[] getIdentityAncestors() {
+        if(identityAncestors == null) {
+            computeIdentityAncestry();
+        }
+        return identityAncestors != CYCLIC ? identityAncestors : null;
+    }
+
+
+    /**
+     * Returns the sorted ids of those identity ancestors that do not have any identity inputs themselves. Two
+     * activations have a common identity ancestor if and only if they have a common identity root. This only
+     * holds as long as the identity links form a DAG.
+     *
+     * @return The ids, or {@code null} if the ancestry contains a cycle of recurrent identity links.
+     */
+    public int[] getIdentityRoots() {
+        if(identityAncestors == null) {
+            computeIdentityAncestry();
+        }
+        return identityAncestors != CYCLIC ? identityRoots : null;
+    }
+
+
+    /**
+     * Computes the identity ancestry recursively. An activation that is reached again while its own ancestry is
+     * still in progress lies on a cycle. Since the arrays of the activations on the current path would be
+     * incomplete, they and all their descendants are marked as cyclic instead.
+     */
+    private void computeIdentityAncestry() {
+        int[] ancestors = new int[] {id};
+        int[] roots = null;
+
+        identityAncestors = IN_PROGRESS;
+        boolean cyclic = false;
+        for(Link l: neuronInputs.values()) {
+            if(l.synapse.key.identity) {
+                Activation in = l.input;
+                if(in.identityAncestors == null) {
+                    in.computeIdentityAncestry();
+                }
+                if(in.identityAncestors == IN_PROGRESS || in.identityAncestors == CYCLIC) {
+                    cyclic = true;
+                } else if(!cyclic) {
+                    ancestors = mergeSorted(ancestors, in.identityAncestors);
+                    roots = roots != null ? mergeSorted(roots, in.identityRoots) : in.identityRoots;
+                }
+            }
+        }
+
+        if(cyclic) {
+            identityAncestors = CYCLIC;
+            identityRoots = null;
+        } else {
+            identityAncestors = ancestors;
+            identityRoots = roots != null ? roots : new int[] {id};
+        }
+    }
+
+
+    private void invalidateIdentityAncestry() {
+        // If the ancestry of this activation has not been computed, then neither has the ancestry of its descendants.
+        if(identityAncestors == null) return;
+
+        identityAncestors = null;
+        identityRoots = null;
+
+        for(Link l: neuronOutputs) {
+            if(l.synapse.key.identity) {
+                l.output.invalidateIdentityAncestry();
+            }
+        }
+    }
+
+
+    private static int[] mergeSorted(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while(i < a.length || j < b.length) {
+            int x;
+            if(j >= b.length || (i < a.length && a[i] <= b[j])) {
+                x = a[i++];
+                if(j < b.length && b[j] == x) j++;
+            } else {
+                x = b[j++];
+            }
+            result[k++] = x;
+        }
+        return k == result.length ? result : Arrays.copyOf(result, k);
+    }
+
+
+    public static boolean containsSorted(int[] a, int x) {
+        return Arrays.binarySearch(a, x) >= 0;
+    }
+
+
+    public static boolean intersectsSorted(int[] a, int[] b) {
+        int i = 0, j = 0;
+        while(i < a.length && j < b.length) {
+            if(a[i] == b[j]) return true;
+            if(a[i] < b[j]) i++;
+            else j++;
+        }
+        return false;
+    }
+
+
     public double process(SearchNode sn, int round, long v) {
         double delta = 0.0;
         State s;
@@ -182,6 +360,11 @@ public final class Activation extends OrActivation {
 
     public State computeValueAndWeight(int round) {
         INeuron n = getINeuron();
+        INeuron.SynapseArrays sa = getInputSynapseArrays(n);
+        double[] weights = sa.weights;
+        byte[] flags = sa.flags;
+        byte[] distanceFunctions = sa.distanceFunctions;
+
         double net = n.biasSum;
 
         int fired = -1;
@@ -189,19 +372,20 @@ public final class Activation extends OrActivation {
         long v = doc.visitedCounter++;
         markPredecessor(v);
 
-        for (InputState is: getInputStates(round, v)) {
-            Synapse s = is.l.synapse;
+        for (InputState is: getInputStates(round, v, flags)) {
+            int synId = is.l.synapseId;
+            int f = flags[synId];
             Activation iAct = is.l.input;
 
             if (iAct == this) continue;
 
-            double x = is.s.value * s.weight;
-            if(s.distanceFunction != null) {
-                x *= s.distanceFunction.f(iAct, this);
+            double x = is.s.value * weights[synId];
+            if(distanceFunctions[synId] != 0) {
+                x *= DistanceFunction.getByOrdinal(distanceFunctions[synId] - 1).f(iAct, this);
             }
             net += x;
 
-            if (!s.key.isRecurrent && !s.isNegative() && net >= 0.0 && fired < 0) {
+            if ((f & (SYNAPSE_RECURRENT | SYNAPSE_NEGATIVE)) == 0 && net >= 0.0 && fired < 0) {
                 fired = iAct.rounds.get(round).fired + 1;
             }
         }
@@ -252,6 +436,32 @@ public final class Activation extends OrActivation {
 
     public void computeBounds() {
         INeuron n = getINeuron();
+        double[] nb = computeNetBounds();
+
+        netUpperBound = nb[0];
+        upperBound = n.activationFunction.f(nb[0]);
+        lowerBound = n.activationFunction.f(nb[1]);
+    }
+
+
+    /**
+     * Computes the upper bound of the net input of this activation from the current bounds of its input
+     * activations, without modifying the stored bounds.
+     *
+     * @return
+     */
+    public double computeNetUpperBound() {
+        return computeNetBounds()[0];
+    }
+
+
+    private double[] computeNetBounds() {
+        INeuron n = getINeuron();
+        INeuron.SynapseArrays sa = getInputSynapseArrays(n);
+        double[] weights = sa.weights;
+        byte[] flags = sa.flags;
+        byte[] distanceFunctions = sa.distanceFunctions;
+
         double ub = n.biasSum + n.posRecSum;
         double lb = n.biasSum + n.posRecSum;
 
@@ -259,8 +469,9 @@ public final class Activation extends OrActivation {
         markPredecessor(v);
 
         for (Link l : neuronInputs.values()) {
-            Synapse s = l.synapse;
-            if(s.inactive) {
+            int synId = l.synapseId;
+            int f = flags[synId];
+            if((f & SYNAPSE_INACTIVE) != 0) {
                 continue;
             }
 
@@ -268,13 +479,13 @@ public final class Activation extends OrActivation {
 
             if (iAct == this) continue;
 
-            double x = s.weight;
-            if(s.distanceFunction != null) {
-                x *= s.distanceFunction.f(iAct, this);
+            double x = weights[synId];
+            if(distanceFunctions[synId] != 0) {
+                x *= DistanceFunction.getByOrdinal(distanceFunctions[synId] - 1).f(iAct, this);
             }
 
-            if (s.isNegative()) {
-                if (!s.key.isRecurrent && !iAct.checkSelfReferencing(false, 0, v)) {
+            if ((f & SYNAPSE_NEGATIVE) != 0) {
+                if ((f & SYNAPSE_RECURRENT) == 0 && !isSelfReferencing(l, false, v)) {
                     ub += iAct.lowerBound * x;
                 }
 
@@ -285,8 +496,23 @@ public final class Activation extends OrActivation {
             }
         }
 
-        upperBound = n.activationFunction.f(ub);
-        lowerBound = n.activationFunction.f(lb);
+        return new double[] {ub, lb};
+    }
+
+
+    /**
+     * Returns the packed synapse arrays of the given neuron, which need to contain every input link of this
+     * activation. A synapse that has been linked after the arrays were last published is packed on demand, so
+     * that its input is never ignored.
+     */
+    private INeuron.SynapseArrays getInputSynapseArrays(INeuron n) {
+        INeuron.SynapseArrays sa = n.inputSynapseArrays;
+        for (Link l : neuronInputs.values()) {
+            if (!sa.contains(l.synapseId)) {
+                sa = n.getInputSynapseArrays(l.synapse);
+            }
+        }
+        return sa;
     }
 
 
@@ -301,12 +527,13 @@ public final class Activation extends OrActivation {
 
 
 
-    private List<InputState> getInputStates(int round, long v) {
+    private List<InputState> getInputStates(int round, long v, byte[] flags) {
         ArrayList<InputState> tmp = new ArrayList<>();
         Synapse lastSynapse = null;
         InputState maxInputState = null;
         for (Link l : neuronInputs.values()) {
-            if(l.synapse.inactive) {
+            int f = flags[l.synapseId];
+            if((f & SYNAPSE_INACTIVE) != 0) {
                 continue;
             }
             if (lastSynapse != null && lastSynapse != l.synapse) {
@@ -314,7 +541,7 @@ public final class Activation extends OrActivation {
                 maxInputState = null;
             }
 
-            State s = l.input.getInputState(round, l.synapse, v);
+            State s = getInputState(l, round, f, v);
             if (maxInputState == null || maxInputState.s.value < s.value) {
                 maxInputState = new InputState(l, s);
             }
@@ -339,14 +566,15 @@ public final class Activation extends OrActivation {
     }
 
 
-    private State getInputState(int round, Synapse s, long v) {
+    private State getInputState(Link l, int round, int synapseFlags, long v) {
+        Activation iAct = l.input;
         State is = State.ZERO;
-        if (s.key.isRecurrent) {
-            if (!s.isNegative() || !checkSelfReferencing(true, 0, v)) {
-                is = round == 0 ? getInitialState(decision) : rounds.get(round - 1);
+        if ((synapseFlags & SYNAPSE_RECURRENT) != 0) {
+            if ((synapseFlags & SYNAPSE_NEGATIVE) == 0 || !isSelfReferencing(l, true, v)) {
+                is = round == 0 ? getInitialState(iAct.decision) : iAct.rounds.get(round - 1);
             }
         } else {
-            is = rounds.get(round);
+            is = iAct.rounds.get(round);
         }
         return is;
     }
@@ -430,6 +658,52 @@ public final class Activation extends OrActivation {
                 l.output.selectedNeuronInputs.remove(l);
             }
         }
+        invalidateSelectedSelfReferencing(doc.visitedCounter++);
+    }
+
+
+    /**
+     * The selected self referencing check of a link walks the non recurrent selected inputs of its input activation.
+     * Changing the selected inputs of the outputs of this activation therefore only affects the checks of the links
+     * leaving the non recurrent output cone of this activation.
+     */
+    private void invalidateSelectedSelfReferencing(long v) {
+        if(visited == v) return;
+        visited = v;
+
+        for(Link l: neuronOutputs) {
+            l.selectedSelfRefLinkVersion = -1;
+            if(!l.synapse.key.isRecurrent) {
+                l.output.invalidateSelectedSelfReferencing(v);
+            }
+        }
+    }
+
+
+    /**
+     * Checks whether the input activation of the given link depends on this activation. The result is cached on the
+     * link, since it only changes if links are added or removed or, in the {@code onlySelected} case, if the decision
+     * of an activation in the input cone of the link changes. The predecessors of this activation need to be marked
+     * with {@code v}.
+     */
+    private boolean isSelfReferencing(Link l, boolean onlySelected, long v) {
+        if (!ENABLE_SELF_REFERENCING_CACHE) {
+            return l.input.checkSelfReferencing(onlySelected, 0, v);
+        }
+
+        if (onlySelected) {
+            if (l.selectedSelfRefLinkVersion != doc.linkVersion) {
+                l.selectedSelfRef = l.input.checkSelfReferencing(true, 0, v);
+                l.selectedSelfRefLinkVersion = doc.linkVersion;
+            }
+            return l.selectedSelfRef;
+        } else {
+            if (l.selfRefLinkVersion != doc.linkVersion) {
+                l.selfRef = l.input.checkSelfReferencing(false, 0, v);
+                l.selfRefLinkVersion = doc.linkVersion;
+            }
+            return l.selfRef;
+        }
     }
 
 
@@ -465,6 +739,10 @@ public final class Activation extends OrActivation {
 
         decision = newDecision;
         visitedState = v;
+
+        if(candidate != null) {
+            doc.updateSelectedCandidate(candidate, newDecision == Decision.SELECTED);
+        }
     }
 
 
@@ -473,6 +751,40 @@ public final class Activation extends OrActivation {
     }
 
 
+    @Override
+    public boolean endsBefore(int pos) {
+        return range.end != Integer.MAX_VALUE && range.end <= pos;
+    }
+
+
+    /**
+     * Fixes the final state of this activation and detaches it from its input activations, so that it can be
+     * evicted from the document. The links to the output activations are kept, since these activations still depend
+     * on the value of this activation.
+     *
+     * @param v
+     */
+    public void retire(long v) {
+        if(candidate != null) {
+            setDecision(finalDecision, v);
+            rounds = finalRounds.copy();
+            candidate = null;
+        }
+
+        for(Link l: neuronInputs.values()) {
+            l.input.neuronOutputs.remove(l);
+        }
+        neuronInputs.clear();
+        selectedNeuronInputs.clear();
+        conflicts = null;
+        doc.linkVersion++;
+
+        outputsToAndNode.clear();
+        outputsToOrNode.clear();
+        outputToInputNode = null;
+    }
+
+
     public State getFinalState() {
         return finalRounds.getLast();
     }
@@ -603,6 +915,17 @@ public final class Activation extends OrActivation {
         public boolean isActive() {
             return rounds.size() <= 1 && getLast().value > 0.0;
         }
+
+
+        public long estimateSize() {
+            long size = MemoryEstimator.shallowSize(Rounds.class) + MemoryEstimator.array(isQueued.length, 1) + MemoryEstimator.treeMap(rounds);
+            for(State s: rounds.values()) {
+                if(s != State.ZERO) {
+                    size += MemoryEstimator.shallowSize(State.class);
+                }
+            }
+            return size;
+        }
     }
 
 
@@ -782,9 +1105,16 @@ public final class Activation extends OrActivation {
      */
     public static class Link {
         public final Synapse synapse;
+        public final int synapseId;
         public final Activation input;
         public final Activation output;
 
+        // The cached results of the self referencing checks of the input activation.
+        long selfRefLinkVersion = -1;
+        boolean selfRef;
+        long selectedSelfRefLinkVersion = -1;
+        boolean selectedSelfRef;
+
         public static Comparator<Link> INPUT_COMP = (sa1, sa2) -> {
             int r = Synapse.INPUT_SYNAPSE_COMP.compare(sa1.synapse, sa2.synapse);
             if (r != 0) return r;
@@ -800,6 +1130,7 @@ public final class Activation extends OrActivation {
 
         public Link(Synapse s, Activation input, Activation output) {
             this.synapse = s;
+            this.synapseId = s.id;
             this.input = input;
             this.output = output;
         }
@@ -26,6 +26,16 @@ public class Candidate  implements Comparable<Candidate> {
     public int id;
     int sequence = 0;
 
+    /**
+     * The sorted ids of the conflicting candidates. It is computed once the candidates have been generated.
+     */
+    public int[] conflicts;
+
+    /**
+     * Set if a conflicting activation, that is not a candidate itself, is selected.
+     */
+    public boolean fixedConflictSelected;
+
     public Candidate(Activation act, int id) {
         this.activation = act;
         this.id = id;
@@ -83,9 +83,36 @@ public class Linker {
 
     public void lateLinking() {
         for(Activation act: doc.activationsByRangeBegin.values()) {
-            linkOutputRelations(act);
+            lateLinking(act);
+        }
+        doc.linker.process();
+    }
+
+
+    /**
+     * Only links the given activations and the activations of those neurons that have one of them as an input.
+     *
+     * @param addedActs
+     */
+    public void lateLinking(Collection<Activation> addedActs) {
+        Set<INeuron> outputNeurons = new HashSet<>();
+        for(Activation act: addedActs) {
+            // Conjunctive synapses are stored in their output neuron, but the provider of the input neuron knows
+            // all loaded output synapses.
+            for(Synapse s: act.getNeuron().inMemoryOutputSynapses) {
+                outputNeurons.add(s.output.get(doc));
+            }
+        }
+
+        Set<Activation> acts = new LinkedHashSet<>(addedActs);
+        for(INeuron n: outputNeurons) {
+            acts.addAll(n.getActivations(doc, false));
+        }
 
-            for(Link l: act.neuronInputs.values()) {
+        for(Activation act: acts) {
+            lateLinking(act);
+
+            for(Link l: act.neuronOutputs) {
                 queue.add(l);
             }
         }
@@ -93,6 +120,15 @@ public class Linker {
     }
 
 
+    private void lateLinking(Activation act) {
+        linkOutputRelations(act);
+
+        for(Link l: act.neuronInputs.values()) {
+            queue.add(l);
+        }
+    }
+
+
     public void process() {
         while(!queue.isEmpty()) {
             Link l = queue.pollFirst();
@@ -110,18 +146,14 @@ public class Linker {
     }
 
 
+    /**
+     * Links the input activations of the synapse {@code s} that are related to the activation {@code rAct}. The
+     * related activations are retrieved through the range index of the input neuron or through the identity links,
+     * instead of testing the relation against every activation of the input neuron.
+     */
     private void link(Activation rAct, Activation oAct, Synapse s, Relation r) {
-        if(!r.isExact()) {
-            INeuron.ThreadState ts = s.input.get().getThreadState(doc.threadId, true);
-            for(Activation iAct: ts.activations.values()) {
-                if(r.test(rAct, iAct)) {
-                    link(s, iAct, oAct);
-                }
-            }
-        } else {
-            for(Activation iAct: r.invert().getActivations(s.input.get(rAct.doc), rAct)) {
-                link(s, iAct, oAct);
-            }
+        for(Activation iAct: r.invert().getActivations(s.input.get(rAct.doc), rAct)) {
+            link(s, iAct, oAct);
         }
     }
 
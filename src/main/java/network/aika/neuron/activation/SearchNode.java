@@ -85,6 +85,9 @@ public class SearchNode implements Comparable<SearchNode> {
     double weightDelta;
     public double accumulatedWeight = 0.0;
 
+    // The sum of the weight bounds of all the activations that are selected on the path to this search node.
+    double selectedBound;
+
     public Map<Activation, Activation.StateChange> modifiedActs = new TreeMap<>(Activation.ACTIVATION_ID_COMP);
 
 
@@ -99,6 +102,13 @@ public class SearchNode implements Comparable<SearchNode> {
     private long processVisited;
     private boolean bestPath;
 
+    // The upper bounds of the weights of those parts of the selected and the excluded subtree that have not been
+    // explored. Negative infinity means that nothing has been pruned and positive infinity that the bound is unknown.
+    private double selectedPrunedBound;
+    private double excludedPrunedBound;
+    private double prunedBound = Double.NEGATIVE_INFINITY;
+    private boolean selectExplored;
+
     // Avoids having to search the same path twice.
     private Decision skip = UNKNOWN;
 
@@ -269,6 +279,325 @@ public class SearchNode implements Comparable<SearchNode> {
     }
 
 
+    /**
+     * The {@code Config} class contains the optional limits of the interpretation search.
+     */
+    public static class Config {
+        public Long timeoutInMilliSeconds;
+        public int beamWidth = Integer.MAX_VALUE;
+
+        public boolean branchAndBound = false;
+
+        public int maxSteps = Integer.MAX_VALUE;
+        public int maxNodes = Integer.MAX_VALUE;
+        public Long timeBudgetInMilliSeconds;
+
+
+        /**
+         * Limits the wall-clock time of the search like the time budget does.
+         *
+         * @param timeoutInMilliSeconds
+         * @return
+         */
+        public Config setTimeout(Long timeoutInMilliSeconds) {
+            this.timeoutInMilliSeconds = timeoutInMilliSeconds;
+            return this;
+        }
+
+
+        /**
+         * Replaces the depth-first search by a beam search that proceeds level by level and keeps only the
+         * {@code beamWidth} best partial interpretations on each candidate level. A partial interpretation is rated
+         * by its accumulated weight plus the optimistic weight bound of the remaining candidates. If a partial
+         * interpretation has been dropped, the document is marked as having an approximate interpretation. The
+         * branch-and-bound pruning is not used by the beam search.
+         *
+         * @param beamWidth
+         * @return
+         */
+        public Config setBeamWidth(int beamWidth) {
+            this.beamWidth = beamWidth;
+            return this;
+        }
+
+
+        /**
+         * Enables the pruning of search nodes that cannot lead to a better interpretation than the best one found
+         * so far. Whether a search node can still improve on the best interpretation is determined by summing up
+         * the weight bounds of the selected and the undecided candidates. The search therefore remains exact.
+         * A decision of a partially pruned subtree is only cached if its weight is not below the bound of the
+         * pruned alternative.
+         *
+         * @param branchAndBound
+         * @return
+         */
+        public Config setBranchAndBound(boolean branchAndBound) {
+            this.branchAndBound = branchAndBound;
+            return this;
+        }
+
+
+        /**
+         * Limits the number of search steps. Once one of the budgets is exhausted, the search completes the current
+         * search path and then returns the best interpretation found so far. The document is then marked as having
+         * an approximate interpretation.
+         *
+         * @param maxSteps
+         * @return
+         */
+        public Config setMaxSteps(int maxSteps) {
+            this.maxSteps = maxSteps;
+            return this;
+        }
+
+
+        /**
+         * Limits the number of search nodes that may be created.
+         *
+         * @param maxNodes
+         * @return
+         */
+        public Config setMaxNodes(int maxNodes) {
+            this.maxNodes = maxNodes;
+            return this;
+        }
+
+
+        /**
+         * Limits the wall-clock time of the search.
+         *
+         * @param timeBudgetInMilliSeconds
+         * @return
+         */
+        public Config setTimeBudget(Long timeBudgetInMilliSeconds) {
+            this.timeBudgetInMilliSeconds = timeBudgetInMilliSeconds;
+            return this;
+        }
+
+
+        /**
+         * The timeout and the global {@code MAX_SEARCH_STEPS} limit are treated like the budgets of this
+         * configuration, so that the search always stops with the best interpretation found so far.
+         */
+        boolean isBudgetExhausted(Document doc, int startSteps, int startNodes, long startTime) {
+            long time = System.currentTimeMillis() - startTime;
+            return doc.searchStepCounter - startSteps >= maxSteps ||
+                    doc.searchNodeIdCounter - startNodes >= maxNodes ||
+                    (timeBudgetInMilliSeconds != null && time >= timeBudgetInMilliSeconds) ||
+                    (timeoutInMilliSeconds != null && time > timeoutInMilliSeconds) ||
+                    doc.searchStepCounter > MAX_SEARCH_STEPS;
+        }
+    }
+
+
+    /**
+     * The weight of an activation is limited by the negative recurrent synapses of its neuron and by the upper
+     * bound of its net input. The bound is optimistic, that is, the activation can never contribute more weight to
+     * an interpretation.
+     *
+     * @param act
+     * @return
+     */
+    public static double getWeightBound(Activation act) {
+        return Math.max(0.0, Math.min(-act.getINeuron().negRecSum, act.netUpperBound));
+    }
+
+
+    /**
+     * Computes for each level the sum of the weight bounds of the candidates on this and the following levels.
+     *
+     * @param doc
+     * @return
+     */
+    private static double[] computeRemainingBounds(Document doc) {
+        int n = doc.candidates.size();
+        double[] remainingBounds = new double[n + 1];
+        for(int i = n - 1; i >= 0; i--) {
+            Activation act = doc.candidates.get(i).activation;
+            // Links that have been added after the bounds were computed, for instance by the late linking, need to
+            // be considered too.
+            act.netUpperBound = Math.max(act.netUpperBound, act.computeNetUpperBound());
+            remainingBounds[i] = remainingBounds[i + 1] + getWeightBound(act);
+        }
+        return remainingBounds;
+    }
+
+
+    /**
+     * Computes the weight bound of the activations that are already selected before the search starts.
+     *
+     * @param doc
+     * @return
+     */
+    private static double computeSelectedBound(Document doc) {
+        double sb = 0.0;
+        for(Activation act: doc.activationsByRangeBegin.values()) {
+            if(act.decision == SELECTED && act.inputValue == null) {
+                sb += getWeightBound(act);
+            }
+        }
+        return sb;
+    }
+
+
+    /**
+     * A partial interpretation of the beam search, represented by the search node at its end.
+     */
+    private static class BeamEntry {
+        final SearchNode node;
+        final double score;
+
+        BeamEntry(SearchNode node, double score) {
+            this.node = node;
+            this.score = score;
+        }
+    }
+
+
+    // Orders the entries by ascending quality, ties are broken in favor of the entry that has been created first.
+    private static final Comparator<BeamEntry> BEAM_ENTRY_COMP = (e1, e2) -> {
+        int r = Double.compare(e1.score, e2.score);
+        if(r != 0) return r;
+        return Integer.compare(e2.node.id, e1.node.id);
+    };
+
+
+    // Orders the entries by the creation of their search nodes, which keeps entries with a common prefix adjacent.
+    private static final Comparator<BeamEntry> BEAM_PATH_COMP = Comparator.comparingInt(e -> e.node.id);
+
+
+    /**
+     * Searches level by level and keeps only the {@code beamWidth} best partial interpretations on each level, as
+     * rated by their accumulated weight plus the optimistic weight bound of the remaining candidates. The search
+     * nodes of the surviving partial interpretations are kept, and the activation states are moved from one entry
+     * to the next by undoing and reapplying the decisions below their common ancestor.
+     */
+    private static void beamSearch(Document doc, SearchNode root, Config config) {
+        long startTime = System.currentTimeMillis();
+        int startSteps = doc.searchStepCounter;
+        int startNodes = doc.searchNodeIdCounter;
+
+        double[] remainingBounds = computeRemainingBounds(doc);
+        int width = config.beamWidth;
+
+        List<BeamEntry> beam = new ArrayList<>();
+        beam.add(new BeamEntry(root, 0.0));
+        SearchNode current = root;
+
+        for(int level = root.level; level < doc.candidates.size(); level++) {
+            PriorityQueue<BeamEntry> next = new PriorityQueue<>(BEAM_ENTRY_COMP);
+            for(BeamEntry e: beam) {
+                // The remaining entries of this level are dropped once the budget is exhausted.
+                if(!next.isEmpty() && config.isBudgetExhausted(doc, startSteps, startNodes, startTime)) {
+                    doc.approximateInterpretation = true;
+                    break;
+                }
+
+                moveTo(doc, current, e.node);
+                current = e.node;
+
+                SearchNode sn = e.node;
+                sn.initStep(doc);
+
+                for(Decision d: new Decision[] {SELECTED, EXCLUDED}) {
+                    boolean expanded = d == SELECTED ? sn.prepareSelectStep(doc, null) : sn.prepareExcludeStep(doc, null);
+                    if(!expanded) continue;
+
+                    SearchNode child = d == SELECTED ? sn.selectedChild : sn.excludedChild;
+                    next.add(new BeamEntry(child, child.accumulatedWeight + remainingBounds[level + 1]));
+                    if(next.size() > width) {
+                        next.poll();
+                        doc.approximateInterpretation = true;
+                    }
+
+                    sn.postReturn(child);
+                }
+                sn.selectedChild = null;
+                sn.excludedChild = null;
+            }
+
+            if(next.isEmpty()) break;
+
+            beam = new ArrayList<>(next);
+
+            // Once the budget is exhausted, only the best partial interpretation is completed.
+            if(beam.size() > 1 && config.isBudgetExhausted(doc, startSteps, startNodes, startTime)) {
+                beam = Collections.singletonList(Collections.max(beam, BEAM_ENTRY_COMP));
+                width = 1;
+                doc.approximateInterpretation = true;
+            }
+
+            beam.sort(BEAM_PATH_COMP);
+        }
+
+        SearchNode leaf = Collections.max(beam, BEAM_ENTRY_COMP).node;
+        moveTo(doc, current, leaf);
+        leaf.processResult(doc);
+        moveTo(doc, leaf, root);
+    }
+
+
+    /**
+     * Changes the activation states from those of the search node {@code from} to those of the search node
+     * {@code to}. The decisions are undone up to the common ancestor of both nodes and the stored states are then
+     * reapplied down to the target node. Since the activation states change without a newly computed search node,
+     * the affected activations are marked dirty, so that cached search nodes are not reused for them.
+     *
+     * @param doc
+     * @param from
+     * @param to
+     */
+    private static void moveTo(Document doc, SearchNode from, SearchNode to) {
+        if(from == to) return;
+
+        long v = doc.visitedCounter++;
+        ArrayDeque<SearchNode> down = new ArrayDeque<>();
+        while(from != to) {
+            if(from.level >= to.level) {
+                SearchNode pn = from.getParent();
+                pn.postReturn(from);
+                from.markMoved(v);
+                from = pn;
+            } else {
+                down.push(to);
+                to = to.getParent();
+            }
+        }
+
+        for(SearchNode sn: down) {
+            SearchNode pn = sn.getParent();
+            Activation act = pn.candidate.activation;
+            act.setDecision(sn.getDecision(), pn.visited);
+            if(act.decision != sn.getDecision()) {
+                throw new RuntimeException("The decision of a beam search entry could not be restored.");
+            }
+            sn.changeState(Activation.Mode.NEW);
+            sn.markMoved(v);
+        }
+    }
+
+
+    private void markMoved(long v) {
+        markDirtyWithOutputs(getParent().candidate.activation, v);
+        for(Activation act: modifiedActs.keySet()) {
+            markDirtyWithOutputs(act, v);
+        }
+    }
+
+
+    private static void markDirtyWithOutputs(Activation act, long v) {
+        act.markDirty(v);
+        for (Activation.Link l : act.neuronOutputs) {
+            l.output.markDirty(v);
+        }
+    }
+
+
+    public static void search(Document doc, SearchNode root, long v, Long timeoutInMilliSeconds) {
+        search(doc, root, v, new Config().setTimeout(timeoutInMilliSeconds));
+    }
+
+
     /**
      * Searches for the best interpretation for the given document.
      *
@@ -277,12 +606,28 @@ public class SearchNode implements Comparable<SearchNode> {
      *
      * @param doc
      * @param root
+     * @param config
      */
-    public static void search(Document doc, SearchNode root, long v, Long timeoutInMilliSeconds) throws TimeoutException {
+    public static void search(Document doc, SearchNode root, long v, Config config) {
         SearchNode sn = root;
         double returnWeight = 0.0;
         long startTime = System.currentTimeMillis();
 
+        if(config.beamWidth < Integer.MAX_VALUE) {
+            beamSearch(doc, root, config);
+            return;
+        }
+
+        double[] remainingBounds = null;
+        if(config.branchAndBound) {
+            remainingBounds = computeRemainingBounds(doc);
+            root.selectedBound = computeSelectedBound(doc);
+        }
+
+        int startSteps = doc.searchStepCounter;
+        int startNodes = doc.searchNodeIdCounter;
+        boolean budgetExhausted = false;
+
         do {
             if (sn.processVisited != v) {
                 sn.step = Step.INIT;
@@ -291,11 +636,16 @@ public class SearchNode implements Comparable<SearchNode> {
 
             switch(sn.step) {
                 case INIT:
-                    if (sn.level >= doc.candidates.size()) {
-                        if(timeoutInMilliSeconds != null && System.currentTimeMillis() > startTime + timeoutInMilliSeconds) {
-                            throw new TimeoutException("Interpretation search took too long: " + (System.currentTimeMillis() - startTime) + "ms");
-                        }
+                    sn.selectedPrunedBound = Double.NEGATIVE_INFINITY;
+                    sn.excludedPrunedBound = Double.NEGATIVE_INFINITY;
+                    sn.prunedBound = Double.NEGATIVE_INFINITY;
+                    sn.selectExplored = false;
+                    if (!budgetExhausted && config.isBudgetExhausted(doc, startSteps, startNodes, startTime)) {
+                        budgetExhausted = true;
+                        doc.approximateInterpretation = true;
+                    }
 
+                    if (sn.level >= doc.candidates.size()) {
                         returnWeight = sn.processResult(doc);
                         sn.step = Step.FINAL;
                         sn = sn.getParent();
@@ -305,9 +655,14 @@ public class SearchNode implements Comparable<SearchNode> {
                     }
                     break;
                 case PREPARE_SELECT:
-                    sn.step = sn.prepareSelectStep(doc) ? Step.SELECT : Step.PREPARE_EXCLUDE;
+                    if(sn.prepareSelectStep(doc, remainingBounds)) {
+                        sn.step = Step.SELECT;
+                    } else {
+                        sn.step = Step.PREPARE_EXCLUDE;
+                    }
                     break;
                 case SELECT:
+                    sn.selectExplored = true;
                     sn.step = Step.POST_SELECT;
                     sn = sn.selectedChild;
                     break;
@@ -318,7 +673,17 @@ public class SearchNode implements Comparable<SearchNode> {
                     sn.step = Step.PREPARE_EXCLUDE;
                     break;
                 case PREPARE_EXCLUDE:
-                    sn.step = sn.prepareExcludeStep(doc) ? Step.EXCLUDE : Step.FINAL;
+                    if(budgetExhausted && sn.selectExplored) {
+                        // Once the budget is exhausted, only the current search path is completed.
+                        sn.excludedWeight = Double.NEGATIVE_INFINITY;
+                        sn.excludedChild = null;
+                        sn.excludedPrunedBound = Double.POSITIVE_INFINITY;
+                        sn.step = Step.FINAL;
+                    } else if(sn.prepareExcludeStep(doc, remainingBounds)) {
+                        sn.step = Step.EXCLUDE;
+                    } else {
+                        sn.step = Step.FINAL;
+                    }
                     break;
                 case EXCLUDE:
                     sn.step = Step.POST_EXCLUDE;
@@ -350,12 +715,7 @@ public class SearchNode implements Comparable<SearchNode> {
         boolean precondition = checkPrecondition();
 
         alreadySelected = precondition && !candidate.isConflicting() || candidate.activation.inputDecision == SELECTED;
-        alreadyExcluded = !precondition || checkExcluded(candidate.activation) || candidate.activation.inputDecision == EXCLUDED;
-
-        if (doc.searchStepCounter > MAX_SEARCH_STEPS) {
-            dumpDebugState();
-            throw new RuntimeException("Max search step exceeded.");
-        }
+        alreadyExcluded = !precondition || checkExcluded(doc, candidate) || candidate.activation.inputDecision == EXCLUDED;
 
         doc.searchStepCounter++;
 
@@ -368,16 +728,60 @@ public class SearchNode implements Comparable<SearchNode> {
     }
 
 
-    private boolean prepareSelectStep(Document doc) {
+    /**
+     * Checks whether a child search node with the given decision might still lead to a better interpretation than
+     * the best one found so far.
+     *
+     * @param doc
+     * @param remainingBounds
+     * @param d
+     * @return
+     */
+    private boolean isPromising(Document doc, double[] remainingBounds, Decision d) {
+        SearchNode incumbent = doc.selectedSearchNode;
+        if(incumbent == null || incumbent.level < doc.candidates.size()) return true;
+
+        double bound = getChildSelectedBound(d) + remainingBounds[level + 1];
+        if(bound + INeuron.TOLERANCE > incumbent.accumulatedWeight) return true;
+
+        setPrunedBound(d, bound);
+        return false;
+    }
+
+
+    private void setPrunedBound(Decision d, double bound) {
+        if(d == SELECTED) {
+            selectedPrunedBound = Math.max(selectedPrunedBound, bound);
+        } else {
+            excludedPrunedBound = Math.max(excludedPrunedBound, bound);
+        }
+    }
+
+
+    private double getChildSelectedBound(Decision d) {
+        return selectedBound + (d == SELECTED ? getWeightBound(candidate.activation) : 0.0);
+    }
+
+
+    private boolean prepareSelectStep(Document doc, double[] remainingBounds) {
         if(alreadyExcluded || skip == SELECTED || getCachedDecision() == Decision.EXCLUDED) return false;
 
+        if(remainingBounds != null && !isPromising(doc, remainingBounds, SELECTED)) {
+            selectedWeight = Double.NEGATIVE_INFINITY;
+            selectedChild = null;
+            return false;
+        }
+
         candidate.activation.setDecision(SELECTED, visited);
 
         if (candidate.cachedDecision == UNKNOWN) {
-            invalidateCachedDecisions();
+            invalidateCachedDecisions(doc);
         }
 
         selectedChild = new SearchNode(doc, this, excludedParent, level + 1);
+        if(remainingBounds != null) {
+            selectedChild.selectedBound = getChildSelectedBound(SELECTED);
+        }
 
         candidate.debugDecisionCounts[0]++;
 
@@ -385,12 +789,21 @@ public class SearchNode implements Comparable<SearchNode> {
     }
 
 
-    private boolean prepareExcludeStep(Document doc) {
+    private boolean prepareExcludeStep(Document doc, double[] remainingBounds) {
         if(alreadySelected || skip == EXCLUDED || getCachedDecision() == Decision.SELECTED) return false;
 
+        if(remainingBounds != null && !isPromising(doc, remainingBounds, EXCLUDED)) {
+            excludedWeight = Double.NEGATIVE_INFINITY;
+            excludedChild = null;
+            return false;
+        }
+
         candidate.activation.setDecision(EXCLUDED, visited);
 
         excludedChild = new SearchNode(doc, selectedParent, this, level + 1);
+        if(remainingBounds != null) {
+            excludedChild.selectedBound = getChildSelectedBound(EXCLUDED);
+        }
 
         candidate.debugDecisionCounts[1]++;
 
@@ -399,6 +812,7 @@ public class SearchNode implements Comparable<SearchNode> {
 
 
     private void postReturn(SearchNode child) {
+        setPrunedBound(child.getDecision(), child.prunedBound);
         child.changeState(Activation.Mode.OLD);
 
         candidate.activation.setDecision(UNKNOWN, visited);
@@ -412,15 +826,20 @@ public class SearchNode implements Comparable<SearchNode> {
         if(cd == UNKNOWN) {
             d = alreadySelected || (!alreadyExcluded && selectedWeight >= excludedWeight) ? SELECTED : EXCLUDED;
 
-            if (!alreadyExcluded) {
+            // The decision may only be reused if the unexplored parts of the other subtree cannot be any better.
+            double otherPrunedBound = d == SELECTED ? excludedPrunedBound : selectedPrunedBound;
+            if (!alreadyExcluded && getWeight(d) >= otherPrunedBound) {
                 candidate.cachedDecision = d;
             }
         } else {
             d = cd;
         }
 
+        double pb = Math.max(selectedPrunedBound, excludedPrunedBound);
+        prunedBound = pb > getWeight(d) ? pb : Double.NEGATIVE_INFINITY;
+
         SearchNode cn = d == SELECTED ? selectedChild : excludedChild;
-        if(cn.bestPath) {
+        if(cn != null && cn.bestPath) {
             candidate.bestChildNode = cn;
             bestPath = true;
         }
@@ -433,6 +852,11 @@ public class SearchNode implements Comparable<SearchNode> {
             excludedChild = null;
         }
 
+        return getWeight(d);
+    }
+
+
+    private double getWeight(Decision d) {
         return d == SELECTED ? selectedWeight : excludedWeight;
     }
 
@@ -443,10 +867,23 @@ public class SearchNode implements Comparable<SearchNode> {
     }
 
 
-    private void invalidateCachedDecisions() {
+    private void invalidateCachedDecisions(Document doc) {
         for (Activation.Link l : candidate.activation.neuronOutputs) {
             if (!l.synapse.isNegative()) {
-                invalidateCachedDecision(l.output);
+                Candidate pos = l.output.candidate;
+                if (doc.isCandidate(pos) && pos.conflicts != null) {
+                    if (pos.cachedDecision == Decision.EXCLUDED) {
+                        pos.cachedDecision = UNKNOWN;
+                    }
+                    for (int id : pos.conflicts) {
+                        Candidate neg = doc.candidates.get(id);
+                        if (neg.cachedDecision == Decision.SELECTED) {
+                            neg.cachedDecision = UNKNOWN;
+                        }
+                    }
+                } else {
+                    invalidateCachedDecision(l.output);
+                }
             }
         }
     }
@@ -503,9 +940,17 @@ public class SearchNode implements Comparable<SearchNode> {
     }
 
 
-    private boolean checkExcluded(Activation ref) {
-        for (Activation cn : ref.getConflicts()) {
-            if (cn.decision == SELECTED) return true;
+    private boolean checkExcluded(Document doc, Candidate c) {
+        if (c.conflicts == null) {
+            for (Activation cn : c.activation.getConflicts()) {
+                if (cn.decision == SELECTED) return true;
+            }
+            return false;
+        }
+
+        if (c.fixedConflictSelected) return true;
+        for (int id : c.conflicts) {
+            if (doc.selectedCandidates.get(id)) return true;
         }
         return false;
     }
@@ -535,6 +980,11 @@ public class SearchNode implements Comparable<SearchNode> {
     }
 
 
+    public int getLevel() {
+        return level;
+    }
+
+
     public SearchNode getParent() {
         return getDecision() == SELECTED ? selectedParent : excludedParent;
     }
@@ -558,6 +1008,11 @@ public class SearchNode implements Comparable<SearchNode> {
     }
 
 
+    /**
+     * The search no longer throws this exception. An exceeded timeout exhausts the search budget instead, and the
+     * document is marked as having an approximate interpretation.
+     */
+    @Deprecated
     public static class TimeoutException extends RuntimeException {
 
         public TimeoutException(String message) {
@@ -33,24 +33,32 @@ public class InstanceRelation extends Relation {
         List<Activation> results = new ArrayList<>();
         switch(type) {
             case COMMON_ANCESTOR:
-                collectCommonAncestor(results, n, linkedAct, linkedAct.doc.visitedCounter++);
+                collectCommonAncestor(results, n, linkedAct, linkedAct.doc.visitedCounter++, linkedAct.doc.visitedCounter++);
+                break;
             case CONTAINS:
                 collectContains(results, n, linkedAct, linkedAct.doc.visitedCounter++);
+                break;
             case CONTAINED_IN:
                 collectContainedIn(results, n, linkedAct, linkedAct.doc.visitedCounter++);
+                break;
         }
         return results;
     }
 
 
-    private void collectCommonAncestor(Collection<Activation> results, INeuron n, Activation linkedAct, long v) {
-        if(linkedAct.visited == v) return;
+    /**
+     * Walks up to all the identity ancestors of the linked activation and collects their descendants. The upward
+     * walk is marked separately, so that it is not cut short by activations already reached by a downward walk.
+     */
+    private void collectCommonAncestor(Collection<Activation> results, INeuron n, Activation linkedAct, long v1, long v2) {
+        if(linkedAct.markedAncestor == v1) return;
+        linkedAct.markedAncestor = v1;
 
-        collectContains(results, n, linkedAct, v);
+        collectContains(results, n, linkedAct, v2);
 
         for(Activation.Link l: linkedAct.neuronInputs.values()) {
             if(l.synapse.key.identity) {
-                collectCommonAncestor(results, n, l.input, v);
+                collectCommonAncestor(results, n, l.input, v1, v2);
             }
         }
     }
@@ -95,9 +103,9 @@ public class InstanceRelation extends Relation {
             case COMMON_ANCESTOR:
                 return hasCommonAncestor(act, linkedAct);
             case CONTAINS:
-                return contains(act, linkedAct, act.doc.visitedCounter++);
+                return contains(act, linkedAct);
             case CONTAINED_IN:
-                return contains(linkedAct, act, act.doc.visitedCounter++);
+                return contains(linkedAct, act);
         }
         return true;
     }
@@ -117,6 +125,19 @@ public class InstanceRelation extends Relation {
     }
 
 
+    /**
+     * Checks whether {@code actB} is an identity ancestor of {@code actA}. The identity links are only traversed if
+     * the ancestry of {@code actA} contains a cycle.
+     */
+    private static boolean contains(Activation actA, Activation actB) {
+        int[] ancestors = actA.getIdentityAncestors();
+        if(ancestors != null) {
+            return Activation.containsSorted(ancestors, actB.id);
+        }
+        return contains(actA, actB, actA.doc.visitedCounter++);
+    }
+
+
     private static boolean contains(Activation actA, Activation actB, long v) {
         if(actA.visited == v) return false;
         actA.visited = v;
@@ -133,6 +154,12 @@ public class InstanceRelation extends Relation {
 
 
     private static boolean hasCommonAncestor(Activation act, Activation linkedAct) {
+        int[] rootsA = act.getIdentityRoots();
+        int[] rootsB = linkedAct.getIdentityRoots();
+        if(rootsA != null && rootsB != null) {
+            return Activation.intersectsSorted(rootsA, rootsB);
+        }
+
         long v = act.doc.visitedCounter++;
         markAncestors(linkedAct, v);
         return hasCommonAncestor(act, v, act.doc.visitedCounter++);
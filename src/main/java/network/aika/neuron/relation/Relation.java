@@ -1,6 +1,7 @@
 package network.aika.neuron.relation;
 
 
+import network.aika.MemoryEstimator;
 import network.aika.Model;
 import network.aika.neuron.INeuron;
 import network.aika.neuron.activation.Activation;
@@ -32,6 +33,11 @@ public abstract class Relation implements Comparable<Relation>, Writable {
     public abstract boolean isExact();
 
 
+    public long estimateSize() {
+        return MemoryEstimator.shallowSize(getClass());
+    }
+
+
     public abstract Collection<Activation> getActivations(INeuron n, Activation linkedAct);
 
 }
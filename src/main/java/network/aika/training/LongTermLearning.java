@@ -24,8 +24,10 @@ import network.aika.neuron.activation.Activation;
 import network.aika.neuron.INeuron;
 import network.aika.training.SynapseEvaluation.Result;
 
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
 
 
 /**
@@ -49,6 +51,7 @@ public class LongTermLearning {
         public double ltdLearnRate;
         public double beta;
         public boolean createNewSynapses;
+        public ForkJoinPool pool;
 
 
         /**
@@ -85,13 +88,33 @@ public class LongTermLearning {
             this.createNewSynapses = createNewSynapses;
             return this;
         }
+
+
+        /**
+         * If a pool is set, the synapse evaluations are computed in parallel, grouped by the output neuron of the
+         * target activations. The synapse evaluation therefore needs to be thread-safe and free of side effects. The
+         * weight changes are still applied sequentially in the order of the activations, so that the result is the
+         * same as without a pool.
+         *
+         * @param pool
+         * @return
+         */
+        public Config setPool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
     }
 
 
 
     public static void train(Document doc, Config config) {
+        if(config.pool != null) {
+            trainParallel(doc, config);
+            return;
+        }
+
         doc.getActivations()
-                .filter(act -> act.targetValue == null ? act.isFinalActivation() : act.targetValue > 0.0)
+                .filter(act -> isActive(act))
                 .forEach(act -> {
             longTermPotentiation(doc, config, act);
             longTermDepression(doc, config, act, false);
@@ -101,6 +124,73 @@ public class LongTermLearning {
     }
 
 
+    /**
+     * The evaluations of a single target activation. They only depend on the committed weights, which do not change
+     * during training, and may therefore be computed before any of the deltas is applied.
+     */
+    private static class Evaluation {
+        List<LTPUpdate> ltp;
+        Map<Synapse, Result> ltdInputs;
+        Map<Synapse, Result> ltdOutputs;
+    }
+
+
+    private static class LTPUpdate {
+        Synapse synapse;
+        Activation iAct;
+        Result result;
+        double sDelta;
+    }
+
+
+    private static void trainParallel(Document doc, Config config) {
+        List<Activation> acts = doc.getActivations()
+                .filter(act -> isActive(act))
+                .collect(Collectors.toList());
+
+        Map<Activation, Evaluation> evals = Collections.synchronizedMap(new IdentityHashMap<>());
+
+        Map<INeuron, List<Activation>> groups = new LinkedHashMap<>();
+        for(Activation act: acts) {
+            groups.computeIfAbsent(act.getINeuron(), n -> new ArrayList<>()).add(act);
+        }
+
+        config.pool.submit(() ->
+            ForkJoinTask.invokeAll(
+                    groups.values()
+                            .stream()
+                            .map(group -> ForkJoinTask.adapt(() -> {
+                                for(Activation act: group) {
+                                    evals.put(act, evaluate(doc, config, act));
+                                }
+                            }))
+                            .collect(Collectors.toList())
+            )
+        ).join();
+
+        for(Activation act: acts) {
+            Evaluation e = evals.get(act);
+            applyLTP(config, act, e.ltp);
+            longTermDepression(doc, config, act, false, e.ltdInputs);
+            longTermDepression(doc, config, act, true, e.ltdOutputs);
+        }
+    }
+
+
+    private static Evaluation evaluate(Document doc, Config config, Activation act) {
+        Evaluation e = new Evaluation();
+        e.ltp = evaluateLTP(doc, config, act);
+        e.ltdInputs = evaluateLTD(config, act, false);
+        e.ltdOutputs = evaluateLTD(config, act, true);
+        return e;
+    }
+
+
+    private static boolean isActive(Activation act) {
+        return act.targetValue == null ? act.isFinalActivation() : act.targetValue > 0.0;
+    }
+
+
     private static double hConj(Activation act) {
         INeuron n = act.getINeuron();
         return act.getFinalState().net / (n.biasSum + n.posDirSum + n.posRecSum);
@@ -114,43 +204,61 @@ public class LongTermLearning {
      * @param act
      */
     public static void longTermPotentiation(Document doc, Config config, Activation act) {
-        INeuron n = act.getINeuron();
+        applyLTP(config, act, evaluateLTP(doc, config, act));
+    }
+
 
+    private static List<LTPUpdate> evaluateLTP(Document doc, Config config, Activation act) {
         double iv = Utils.nullSafeMax(act.getFinalState().value, act.targetValue);
 
         double x = config.ltpLearnRate * (1.0 - act.getFinalState().value) * iv;
 
+        List<LTPUpdate> updates = new ArrayList<>();
         if(config.createNewSynapses) {
             doc.getActivations()
-                    .filter(iAct -> iAct.targetValue == null ? iAct.isFinalActivation() : iAct.targetValue > 0.0)
+                    .filter(iAct -> isActive(iAct))
                     .filter(iAct -> iAct.node != act.node)
                     .forEach(iAct -> {
-                synapseLTP(config, null, iAct, act, x);
+                evaluateSynapseLTP(config, null, iAct, act, x, updates);
             });
         } else {
             act.neuronInputs.values()
                     .stream()
-                    .filter(sa -> sa.input.targetValue == null ? sa.input.isFinalActivation() : sa.input.targetValue > 0.0)
+                    .filter(sa -> isActive(sa.input))
                     .forEach(sa -> {
-                synapseLTP(config, sa.synapse, sa.input, act, x);
+                evaluateSynapseLTP(config, sa.synapse, sa.input, act, x, updates);
             });
         }
+        return updates;
     }
 
 
-    private static void synapseLTP(Config config, Synapse s, Activation iAct, Activation act, double x) {
+    private static void evaluateSynapseLTP(Config config, Synapse s, Activation iAct, Activation act, double x, List<LTPUpdate> updates) {
         Result r = config.synapseEvaluation.evaluate(s, iAct, act);
 
         if(r == null) return;
 
-        double h = s.isConjunction(false, false) ? hConj(act) : 1.0;
+        double h = s != null && s.isConjunction(false, false) ? hConj(act) : 1.0;
 
         double sDelta = iAct.getFinalState().value * x * r.significance * h;
 
         if(sDelta > 0.0) {
-            Synapse synapse = Synapse.createOrLookup(act.doc, null, r.synapseKey, r.relations, r.distanceFunction, iAct.getNeuron(), act.getNeuron());
+            LTPUpdate u = new LTPUpdate();
+            u.synapse = s;
+            u.iAct = iAct;
+            u.result = r;
+            u.sDelta = sDelta;
+            updates.add(u);
+        }
+    }
+
 
-            synapse.updateDelta(act.doc, sDelta, -config.beta * sDelta);
+    private static void applyLTP(Config config, Activation act, List<LTPUpdate> updates) {
+        for(LTPUpdate u: updates) {
+            Result r = u.result;
+            Synapse synapse = Synapse.createOrLookup(act.doc, null, r.synapseKey, r.relations, r.distanceFunction, u.iAct.getNeuron(), act.getNeuron());
+
+            synapse.updateDelta(act.doc, u.sDelta, -config.beta * u.sDelta);
         }
     }
 
@@ -168,24 +276,28 @@ public class LongTermLearning {
      * @param dir
      */
     public static void longTermDepression(Document doc, Config config, Activation act, boolean dir) {
+        longTermDepression(doc, config, act, dir, null);
+    }
+
+
+    /**
+     * @param evaluations The precomputed evaluations of the candidate synapses, or null. Synapses that have been
+     *                    relinked in the meantime are evaluated on demand.
+     */
+    private static void longTermDepression(Document doc, Config config, Activation act, boolean dir, Map<Synapse, Result> evaluations) {
         if(act.getFinalState().value <= 0.0) return;
 
         INeuron n = act.getINeuron();
 
-        Set<Synapse> actSyns = new TreeSet<>(dir ? Synapse.OUTPUT_SYNAPSE_COMP : Synapse.INPUT_SYNAPSE_COMP);
-        (dir ? act.neuronOutputs : act.neuronInputs.values())
-                .forEach(sa -> {
-                    Activation rAct = dir ? sa.output : sa.input;
-                    if(rAct.targetValue == null ? rAct.isFinalActivation() : rAct.targetValue > 0.0) {
-                        actSyns.add(sa.synapse);
-                    }
-                });
+        Set<Synapse> actSyns = getActiveSynapses(act, dir);
 
         (dir ? n.outputSynapses : n.inputSynapses).values().stream()
                 .filter(s -> !s.isNegative() && !actSyns.contains(s))
                 .forEach(s -> {
                     if(s.isConjunction(false, false) != dir) {
-                        Result r = config.synapseEvaluation.evaluate(s, dir ? act : null, dir ? null : act);
+                        Result r = evaluations != null && evaluations.containsKey(s) ?
+                                evaluations.get(s) :
+                                config.synapseEvaluation.evaluate(s, dir ? act : null, dir ? null : act);
                         if (r != null) {
                             s.updateDelta(doc,-config.ltdLearnRate * act.getFinalState().value * r.significance, 0.0);
 
@@ -194,4 +306,33 @@ public class LongTermLearning {
                     }
                 });
     }
+
+
+    private static Map<Synapse, Result> evaluateLTD(Config config, Activation act, boolean dir) {
+        Map<Synapse, Result> evaluations = new IdentityHashMap<>();
+        if(act.getFinalState().value <= 0.0) return evaluations;
+
+        INeuron n = act.getINeuron();
+
+        Set<Synapse> actSyns = getActiveSynapses(act, dir);
+
+        (dir ? n.outputSynapses : n.inputSynapses).values().stream()
+                .filter(s -> !s.isNegative() && !actSyns.contains(s))
+                .filter(s -> s.isConjunction(false, false) != dir)
+                .forEach(s -> evaluations.put(s, config.synapseEvaluation.evaluate(s, dir ? act : null, dir ? null : act)));
+        return evaluations;
+    }
+
+
+    private static Set<Synapse> getActiveSynapses(Activation act, boolean dir) {
+        Set<Synapse> actSyns = new TreeSet<>(dir ? Synapse.OUTPUT_SYNAPSE_COMP : Synapse.INPUT_SYNAPSE_COMP);
+        (dir ? act.neuronOutputs : act.neuronInputs.values())
+                .forEach(sa -> {
+                    Activation rAct = dir ? sa.output : sa.input;
+                    if(isActive(rAct)) {
+                        actSyns.add(sa.synapse);
+                    }
+                });
+        return actSyns;
+    }
 }
@@ -97,7 +97,7 @@ public class SupervisedTraining {
 
         double x = learnRate * targetAct.errorSignal;
 
-        n.changeBias(x);
+        n.changeBias(doc, x);
 
         doc.getFinalActivations().forEach(iAct -> {
             Result r = se.evaluate(null, iAct, targetAct);
@@ -51,7 +51,7 @@ public interface SynapseEvaluation {
             if(delete) {
                 s.toBeDeleted = true;
             } else {
-                s.inactive = true;
+                s.setInactive(true);
             }
         }
     }
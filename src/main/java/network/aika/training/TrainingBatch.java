@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.training;
+
+
+import network.aika.Converter;
+import network.aika.Document;
+import network.aika.Model;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Synapse;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+
+/**
+ * The {@code TrainingBatch} commits the weight changes of several training documents at once. The weight and bias
+ * deltas keep accumulating in the synapses and neurons, while the batch only collects the modified synapses of the
+ * documents that are added to it. When the batch is committed, each modified neuron is converted exactly once,
+ * instead of once for every document. Until then, all the documents of the batch are processed with the weights
+ * of the last commit.
+ *
+ * <p>A document is added instead of calling {@code Document.commit}, after it has been trained and before its
+ * activations are cleared.
+ *
+ * @author Lukas Molzberger
+ */
+public class TrainingBatch {
+
+    private Model model;
+
+    /**
+     * The batch is committed automatically once this number of documents has been added. Zero disables the
+     * automatic commit.
+     */
+    public int maxDocuments;
+
+    private TreeMap<INeuron, Set<Synapse>> modifiedWeights = new TreeMap<>();
+    private int numberOfDocuments;
+
+    public int numberOfCommits;
+    public int numberOfConvertedNeurons;
+
+
+    public TrainingBatch(Model model) {
+        this(model, 0);
+    }
+
+
+    public TrainingBatch(Model model, int maxDocuments) {
+        this.model = model;
+        this.maxDocuments = maxDocuments;
+    }
+
+
+    /**
+     * Moves the modified synapses of the given document into this batch.
+     *
+     * @param doc
+     */
+    public void add(Document doc) {
+        boolean commit;
+        synchronized (this) {
+            for (Map.Entry<INeuron, Set<Synapse>> me : doc.modifiedWeights.entrySet()) {
+                modifiedWeights.computeIfAbsent(me.getKey(), n -> new TreeSet<>(Synapse.INPUT_SYNAPSE_COMP))
+                        .addAll(me.getValue());
+            }
+            doc.modifiedWeights.clear();
+
+            numberOfDocuments++;
+            commit = maxDocuments > 0 && numberOfDocuments >= maxDocuments;
+        }
+
+        if(commit) {
+            commit();
+        }
+    }
+
+
+    public synchronized int getNumberOfDocuments() {
+        return numberOfDocuments;
+    }
+
+
+    /**
+     * Converts each of the modified neurons once, which applies the accumulated weight and bias deltas.
+     */
+    public synchronized void commit() {
+        modifiedWeights.forEach((n, inputSyns) -> Converter.convert(model.defaultThreadId, null, n, inputSyns));
+
+        numberOfConvertedNeurons += modifiedWeights.size();
+        numberOfCommits++;
+
+        modifiedWeights.clear();
+        numberOfDocuments = 0;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.lattice;
+
+
+import network.aika.Converter;
+import network.aika.Model;
+import network.aika.lattice.AndNode.Refinement;
+import network.aika.lattice.AndNode.RefValue;
+import network.aika.lattice.AndNode.RelationsMap;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import network.aika.neuron.activation.Range;
+import network.aika.neuron.relation.RangeRelation;
+import network.aika.neuron.relation.Relation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ *
+ * @author Lukas Molzberger
+ */
+public class LatticeCollectorTest {
+
+    @Test
+    public void testCollectUnusedAndNodes() {
+        Model m = new Model();
+        Neuron inA = m.createNeuron("A");
+        Neuron inB = m.createNeuron("B");
+        Neuron inC = m.createNeuron("C");
+
+        Neuron.init(m.createNeuron("AB"),
+                0.001,
+                INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(-1.0)
+                        .addRangeRelation(Range.Relation.EQUALS, 1)
+                        .setRangeOutput(true),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(inB)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(-1.0)
+        );
+
+        InputNode pA = inA.get().outputNode.get();
+        Assert.assertEquals(1, pA.andChildren.size());
+
+        // A pattern node that is not referenced by any neuron.
+        Refinement ref = new Refinement(new RelationsMap(new Relation[] {new RangeRelation(Range.Relation.EQUALS)}), inC.get().outputNode);
+        RefValue rv = pA.extend(m.defaultThreadId, null, ref);
+        AndNode pAC = rv.child.get();
+        Assert.assertFalse(pAC.isRequired());
+        Assert.assertEquals(2, pA.andChildren.size());
+
+        LatticeCollector lc = new LatticeCollector(m, new LatticeCollector.Config().setMaxScannedNodes(2));
+        int removed = 0;
+        for(int i = 0; i < 10; i++) {
+            removed += lc.step();
+        }
+
+        Assert.assertEquals(1, removed);
+        Assert.assertEquals(1, lc.numberOfRemovedNodes);
+        Assert.assertEquals(1, pA.andChildren.size());
+        Assert.assertNull(inC.get().outputNode.get().andChildren);
+        Assert.assertFalse(m.activeProviders.containsKey(pAC.provider.id));
+        Assert.assertTrue(pA.andChildren.firstEntry().getValue().child.get().isRequired());
+    }
+
+
+    /**
+     * Converts a neuron that uses the and-node AB over and over again, while the collector concurrently removes AB
+     * whenever it is not referenced. The converted neuron must never end up referencing a removed node.
+     */
+    @Test
+    public void testConcurrentConversionAndCollection() throws InterruptedException {
+        Model m = new Model();
+        Neuron inA = m.createNeuron("A");
+        Neuron inB = m.createNeuron("B");
+
+        LatticeCollector lc = new LatticeCollector(m, new LatticeCollector.Config());
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread collector = new Thread(() -> {
+            while(running.get()) {
+                lc.step();
+            }
+        });
+        collector.start();
+
+        Neuron n = Neuron.init(m.createNeuron("AB"),
+                0.001,
+                INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(-1.0)
+                        .addRangeRelation(Range.Relation.EQUALS, 1)
+                        .setRangeOutput(true),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(inB)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(-1.0)
+        );
+        OrNode on = n.get().node.get();
+
+        try {
+            for (int i = 0; i < 20000; i++) {
+                // Drops the reference, so that the collector may remove the and-node.
+                on.removeParents();
+
+                Converter.convert(m.defaultThreadId, null, n.get(), n.inMemoryInputSynapses.values());
+
+                Assert.assertEquals(1, on.andParents.size());
+                Node pn = on.andParents.first().parent.get();
+                Assert.assertTrue(pn instanceof AndNode);
+                Assert.assertFalse(pn.isRemoved());
+                Assert.assertTrue(pn.isRequired());
+            }
+        } finally {
+            running.set(false);
+            collector.join();
+        }
+
+        Assert.assertTrue(lc.numberOfRemovedNodes > 0);
+    }
+
+
+    /**
+     * The neuron references the and-node ABC, whose ancestors are reachable through several parents. Each ancestor
+     * is counted only once, and converting the neuron must not create any thread states, since these belong to the
+     * documents of the thread ids.
+     */
+    @Test
+    public void testNumberOfNeuronRefs() {
+        Model m = new Model(null, 2);
+        Neuron inA = m.createNeuron("A");
+        Neuron inB = m.createNeuron("B");
+        Neuron inC = m.createNeuron("C");
+
+        Neuron n = Neuron.init(m.createNeuron("ABC"),
+                0.001,
+                INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(-1.0)
+                        .addRangeRelation(Range.Relation.EQUALS, 1)
+                        .addRangeRelation(Range.Relation.EQUALS, 2)
+                        .setRangeOutput(true),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(inB)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(-1.0)
+                        .addRangeRelation(Range.Relation.EQUALS, 2),
+                new Synapse.Builder()
+                        .setSynapseId(2)
+                        .setNeuron(inC)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(-1.0)
+        );
+        OrNode on = n.get().node.get();
+
+        Assert.assertEquals(1, on.andParents.size());
+        AndNode pABC = (AndNode) on.andParents.first().parent.get();
+        Assert.assertEquals(3, pABC.level);
+        Assert.assertEquals(3, pABC.parents.size());
+
+        Assert.assertEquals(1, pABC.numberOfNeuronRefs.get());
+        for(Neuron in: new Neuron[] {inA, inB, inC}) {
+            Assert.assertEquals(1, in.get().outputNode.get().numberOfNeuronRefs.get());
+        }
+
+        for(Node.ThreadState th: m.threadStates) {
+            Assert.assertNull(th);
+        }
+
+        on.removeParents();
+
+        Assert.assertEquals(0, pABC.numberOfNeuronRefs.get());
+        for(Neuron in: new Neuron[] {inA, inB, inC}) {
+            Assert.assertEquals(0, in.get().outputNode.get().numberOfNeuronRefs.get());
+        }
+    }
+}
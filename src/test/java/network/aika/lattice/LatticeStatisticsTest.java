@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.lattice;
+
+
+import network.aika.Model;
+import network.aika.Provider;
+import network.aika.network.SuspensionTest;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import network.aika.neuron.activation.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ *
+ * @author Lukas Molzberger
+ */
+public class LatticeStatisticsTest {
+
+    private static Synapse.Builder createInput(int synapseId, Neuron in, boolean last) {
+        Synapse.Builder sb = new Synapse.Builder()
+                .setSynapseId(synapseId)
+                .setNeuron(in)
+                .setWeight(1.0)
+                .setRecurrent(false)
+                .setBias(-1.0)
+                .setRangeOutput(true);
+        if(!last) {
+            sb.addRangeRelation(Range.Relation.EQUALS, synapseId + 1);
+        }
+        return sb;
+    }
+
+
+    @Test
+    public void testLatticeStatistics() {
+        Model m = new Model(new SuspensionTest.DummySuspensionHook(), 1);
+        Neuron inA = m.createNeuron("A");
+        Neuron inB = m.createNeuron("B");
+        Neuron inC = m.createNeuron("C");
+
+        Neuron.init(m.createNeuron("AB"), 0.001, INeuron.Type.EXCITATORY,
+                createInput(0, inA, false),
+                createInput(1, inB, true)
+        );
+        Neuron.init(m.createNeuron("ABC"), 0.001, INeuron.Type.EXCITATORY,
+                createInput(0, inA, false),
+                createInput(1, inB, false),
+                createInput(2, inC, true)
+        );
+
+        LatticeStatistics ls = m.createLatticeStatistics(2);
+        Assert.assertEquals(0, ls.suspendedNodes);
+        // Every neuron has an input node.
+        Assert.assertEquals(5, ls.countByKind.get("InputNode").intValue());
+        Assert.assertEquals(1, ls.andNodesByLevel.get(3).intValue());
+        Assert.assertEquals(1, ls.sharedAndNodes);
+        Assert.assertEquals(2, ls.largestFanOut.size());
+
+        Provider<AndNode> pAB = inA.get().outputNode.get().andChildren.firstEntry().getValue().child;
+
+        m.suspendAll(Provider.SuspensionMode.SAVE);
+        Assert.assertTrue(pAB.isSuspended());
+
+        LatticeStatistics sls = m.createLatticeStatistics(2);
+        Assert.assertTrue(pAB.isSuspended());
+        Assert.assertEquals(0, sls.residentNodes);
+        Assert.assertEquals(ls.residentNodes, sls.suspendedNodes);
+        Assert.assertEquals(ls.countByKind, sls.countByKind);
+        Assert.assertEquals(ls.andNodesByLevel, sls.andNodesByLevel);
+        Assert.assertEquals(ls.andChildrenFanOut, sls.andChildrenFanOut);
+        Assert.assertEquals(ls.neuronRefsDistribution, sls.neuronRefsDistribution);
+        Assert.assertEquals(ls.toJson().replace("\"residentNodes\":" + ls.residentNodes + ",\"suspendedNodes\":0", ""),
+                sls.toJson().replace("\"residentNodes\":0,\"suspendedNodes\":" + ls.residentNodes, ""));
+    }
+}
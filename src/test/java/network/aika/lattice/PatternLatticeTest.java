@@ -19,6 +19,8 @@ package network.aika.lattice;
 
 import network.aika.Document;
 import network.aika.Model;
+import network.aika.Provider;
+import network.aika.network.SuspensionTest;
 import network.aika.neuron.Neuron;
 import network.aika.neuron.Synapse;
 import network.aika.neuron.activation.Range.Relation;
@@ -134,4 +136,119 @@ public class PatternLatticeTest {
 
         Assert.assertFalse(nABC.getActivations(doc, false).isEmpty());
     }
+
+
+    @Test
+    public void testHighFanOutInputNode() {
+        Model m = new Model();
+
+        Neuron inA = m.createNeuron("A");
+        Neuron[] inB = new Neuron[15];
+        Neuron[] nAB = new Neuron[inB.length];
+        for(int i = 0; i < inB.length; i++) {
+            inB[i] = m.createNeuron("B" + i);
+            nAB[i] = Neuron.init(m.createNeuron("AB" + i),
+                    0.001,
+                    INeuron.Type.EXCITATORY,
+                    new Synapse.Builder()
+                            .setSynapseId(0)
+                            .setNeuron(inA)
+                            .setWeight(1.0)
+                            .setBias(-1.0)
+                            .setRecurrent(false)
+                            .addRangeRelation(Relation.EQUALS, 1)
+                            .setRangeOutput(true),
+                    new Synapse.Builder()
+                            .setSynapseId(1)
+                            .setNeuron(inB[i])
+                            .setWeight(1.0)
+                            .setBias(-1.0)
+                            .setRecurrent(false)
+            );
+        }
+
+        Assert.assertTrue(inA.get().outputNode.get().andChildren.size() > InputNode.MAX_ITERATED_AND_CHILDREN);
+
+        Document doc = m.createDocument("aaaaaaaaaa", 0);
+
+        inA.addInput(doc, 0, 1);
+        inB[3].addInput(doc, 0, 1);
+        inB[7].addInput(doc, 0, 1);
+
+        for(int i = 0; i < inB.length; i++) {
+            Assert.assertEquals(i == 3 || i == 7, !nAB[i].getActivations(doc, false).isEmpty());
+        }
+    }
+
+
+    /**
+     * The refinement table of an and-node has to be reused after a sibling node has been suspended and reloaded, and
+     * it is dropped when the and-node itself is suspended.
+     */
+    @Test
+    public void testRefinementTableSuspension() {
+        Model m = new Model(new SuspensionTest.DummySuspensionHook(), 1);
+        Neuron inA = m.createNeuron("A");
+        Neuron inB = m.createNeuron("B");
+        Neuron inC = m.createNeuron("C");
+
+        Neuron.init(m.createNeuron("ABC"),
+                0.001,
+                INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(-1.0)
+                        .addRangeRelation(Relation.EQUALS, 1)
+                        .setRangeOutput(true),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(inB)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(-1.0)
+                        .addRangeRelation(Relation.EQUALS, 2)
+                        .setRangeOutput(true),
+                new Synapse.Builder()
+                        .setSynapseId(2)
+                        .setNeuron(inC)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(-1.0)
+                        .setRangeOutput(true)
+        );
+
+        // The and-node BC joins its activations with the sibling activations of the and-node AB.
+        Provider<AndNode> pAB = inA.get().outputNode.get().andChildren.firstEntry().getValue().child;
+        Provider<AndNode> pBC = inC.get().outputNode.get().andChildren.firstEntry().getValue().child;
+        Assert.assertEquals(-1, pBC.get().getRefinementTableSize());
+
+        processDocument(m, inA, inB, inC);
+        int size = pBC.get().getRefinementTableSize();
+        Assert.assertTrue(size > 0);
+
+        // The reloaded sibling node links its activations through new ref-value objects.
+        pAB.suspend(Provider.SuspensionMode.SAVE);
+
+        processDocument(m, inA, inB, inC);
+        Assert.assertEquals(size, pBC.get().getRefinementTableSize());
+
+        pBC.suspend(Provider.SuspensionMode.SAVE);
+        Assert.assertEquals(-1, pBC.get().getRefinementTableSize());
+
+        processDocument(m, inA, inB, inC);
+        Assert.assertEquals(size, pBC.get().getRefinementTableSize());
+    }
+
+
+    private static void processDocument(Model m, Neuron inA, Neuron inB, Neuron inC) {
+        Document doc = m.createDocument("aaaaaaaaaa", 0);
+        inA.addInput(doc, 0, 1);
+        inB.addInput(doc, 0, 1);
+        inC.addInput(doc, 0, 1);
+        doc.process();
+        doc.clearActivations();
+    }
 }
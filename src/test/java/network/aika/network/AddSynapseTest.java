@@ -19,9 +19,11 @@ package network.aika.network;
 
 import network.aika.Document;
 import network.aika.Model;
+import network.aika.neuron.INeuron;
 import network.aika.neuron.Neuron;
 import network.aika.neuron.Synapse;
 import network.aika.neuron.activation.Activation;
+import network.aika.neuron.activation.Range;
 import network.aika.neuron.activation.Range.Relation;
 import org.junit.Assert;
 import org.junit.Test;
@@ -71,4 +73,40 @@ public class AddSynapseTest {
 
         Assert.assertEquals(4, n.getActivations(doc, true).size());
     }
+
+
+    /**
+     * An input synapse that is linked but not yet contained in the packed synapse arrays of its neuron must not be
+     * ignored by the evaluation of the activations.
+     */
+    @Test
+    public void testUnpackedSynapse() {
+        Model m = new Model();
+
+        Neuron inA = m.createNeuron("A");
+        Neuron n = m.createNeuron("OR");
+        n.addSynapse(
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(10.0)
+                        .setRangeOutput(true)
+        );
+
+        Document doc = m.createDocument("   ");
+        inA.addInput(doc, 0, 1);
+        doc.process();
+        double expected = n.getActivation(doc, new Range(0, 1), true).getFinalState().value;
+        doc.clearActivations();
+        Assert.assertTrue(expected > 0.0);
+
+        n.get().inputSynapseArrays = new INeuron.SynapseArrays(1);
+
+        doc = m.createDocument("   ");
+        inA.addInput(doc, 0, 1);
+        doc.process();
+        Assert.assertEquals(expected, n.getActivation(doc, new Range(0, 1), true).getFinalState().value, 0.0);
+        Assert.assertTrue(n.get().inputSynapseArrays.contains(0));
+        doc.clearActivations();
+    }
 }
@@ -199,7 +199,7 @@ public class ConverterTest {
         Assert.assertEquals(2, out.get().node.get().andParents.size());
 
 
-        inD.inMemoryOutputSynapses.firstEntry().getValue().weightDelta = -1.5f;
+        inD.inMemoryOutputSynapses.first().weightDelta = -1.5f;
 
         Converter.convert( 0, null, out.get(), out.get().inputSynapses.values());
         System.out.println(out.get().node.get().logicToString());
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.network;
+
+
+import network.aika.ActivationFunction;
+import network.aika.Document;
+import network.aika.Model;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import network.aika.neuron.activation.Activation;
+import network.aika.neuron.activation.Range;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+
+/**
+ * A test model with three mutually exclusive entity neurons with different biases. Each entity neuron has its own
+ * input neuron and all of them are inhibited by the same inhibitory neuron. If a word activates all three inputs,
+ * the interpretation search has to decide between the three entities.
+ *
+ * @author Lukas Molzberger
+ */
+public class ExclusiveEntitiesModel {
+
+    public static final double[] BIASES = new double[] {3.0, 5.0, 2.0};
+
+    public Model m;
+    public Neuron[] inputs;
+    public Neuron[] entities;
+    public Neuron inhibitory;
+
+
+    public ExclusiveEntitiesModel() {
+        m = new Model();
+
+        inputs = new Neuron[BIASES.length];
+        entities = new Neuron[BIASES.length];
+        inhibitory = m.createNeuron("INHIB");
+
+        Synapse.Builder[] inhibInputs = new Synapse.Builder[BIASES.length];
+        for(int i = 0; i < BIASES.length; i++) {
+            inputs[i] = m.createNeuron("IN-" + i);
+
+            entities[i] = Neuron.init(
+                    m.createNeuron("E-" + i),
+                    BIASES[i],
+                    ActivationFunction.RECTIFIED_HYPERBOLIC_TANGENT,
+                    INeuron.Type.EXCITATORY,
+                    new Synapse.Builder()
+                            .setSynapseId(0)
+                            .setNeuron(inputs[i])
+                            .setWeight(10.0)
+                            .setBias(-10.0)
+                            .setRecurrent(false)
+                            .setRangeOutput(true),
+                    new Synapse.Builder()
+                            .setSynapseId(1)
+                            .setNeuron(inhibitory)
+                            .setWeight(-100.0)
+                            .setBias(0.0)
+                            .setRecurrent(true)
+                            .addRangeRelation(Range.Relation.EQUALS, 0)
+            );
+
+            inhibInputs[i] = new Synapse.Builder()
+                    .setSynapseId(i)
+                    .setNeuron(entities[i])
+                    .setWeight(1.0)
+                    .setBias(0.0)
+                    .setRecurrent(false)
+                    .setRangeOutput(true);
+        }
+
+        Neuron.init(inhibitory, 0.0, ActivationFunction.RECTIFIED_LINEAR_UNIT, INeuron.Type.INHIBITORY, inhibInputs);
+    }
+
+
+    /**
+     * Creates a document consisting of the given number of one character words without adding any input.
+     *
+     * @param numberOfWords
+     * @return
+     */
+    public Document createDocument(int numberOfWords) {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < numberOfWords; i++) {
+            sb.append("w ");
+        }
+        return m.createDocument(sb.toString(), 0);
+    }
+
+
+    /**
+     * Adds the input activations for the words {@code from} (inclusive) to {@code to} (exclusive) of a document
+     * created by {@code createDocument}.
+     */
+    public void addWords(Document doc, int from, int to) {
+        for(int i = from; i < to; i++) {
+            addWord(doc, i * 2, (i * 2) + 1);
+        }
+    }
+
+
+    public void addWord(Document doc, int begin, int end) {
+        for(Neuron in: inputs) {
+            in.addInput(doc, begin, end);
+        }
+    }
+
+
+    public static Set<String> getFinalEntities(Document doc) {
+        Set<String> results = new TreeSet<>();
+        for(Activation act: doc.activationsByRangeBegin.values()) {
+            if(act.isFinalActivation() && act.getLabel().startsWith("E-")) {
+                results.add(act.getLabel() + " " + act.range);
+            }
+        }
+        return results;
+    }
+}
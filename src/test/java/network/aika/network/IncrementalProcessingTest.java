@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.network;
+
+
+import network.aika.ActivationFunction;
+import network.aika.Document;
+import network.aika.Model;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import network.aika.neuron.activation.Activation;
+import network.aika.neuron.activation.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+
+
+/**
+ *
+ * @author Lukas Molzberger
+ */
+public class IncrementalProcessingTest {
+
+    private static final int NUMBER_OF_WORDS = 6;
+
+    @Test
+    public void testIncrementalProcessing() {
+        ExclusiveEntitiesModel em = new ExclusiveEntitiesModel();
+
+        Document doc = em.createDocument(NUMBER_OF_WORDS);
+        em.addWords(doc, 0, NUMBER_OF_WORDS);
+        doc.process();
+        Set<String> expected = ExclusiveEntitiesModel.getFinalEntities(doc);
+        int numberOfCandidates = doc.candidates.size();
+        doc.clearActivations();
+
+        boolean incrementalMode = Document.INCREMENTAL_MODE;
+        Document.INCREMENTAL_MODE = true;
+        try {
+            doc = em.createDocument(NUMBER_OF_WORDS);
+            em.addWords(doc, 0, NUMBER_OF_WORDS / 2);
+            doc.process();
+            Assert.assertEquals(0, doc.numberOfFrozenCandidates);
+            int firstCandidates = doc.candidates.size();
+
+            int steps = doc.searchStepCounter;
+            em.addWords(doc, NUMBER_OF_WORDS / 2, NUMBER_OF_WORDS);
+            doc.process();
+
+            Assert.assertEquals(firstCandidates, doc.numberOfFrozenCandidates);
+            Assert.assertEquals(numberOfCandidates, doc.candidates.size());
+            Assert.assertEquals(doc.candidates.size(), doc.selectedSearchNode.getLevel());
+            // Only the appended half of the document is searched again.
+            Assert.assertTrue(doc.searchStepCounter - steps <= steps);
+            Assert.assertEquals(expected, ExclusiveEntitiesModel.getFinalEntities(doc));
+            doc.clearActivations();
+        } finally {
+            Document.INCREMENTAL_MODE = incrementalMode;
+        }
+    }
+
+
+    /**
+     * The negative synapse is a conjunctive synapse and is therefore stored in the output neuron. Its link to an
+     * already existing output activation has to be created when the inhibiting input is appended later on.
+     */
+    @Test
+    public void testIncrementalConjunctiveSynapse() {
+        Model m = new Model();
+
+        Neuron inA = m.createNeuron("A");
+        Neuron inN = m.createNeuron("N");
+
+        Neuron outX = Neuron.init(m.createNeuron("X"),
+                5.0,
+                ActivationFunction.RECTIFIED_HYPERBOLIC_TANGENT,
+                INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(10.0)
+                        .setBias(-10.0)
+                        .setRecurrent(false)
+                        .setRangeOutput(true),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(inN)
+                        .setWeight(-100.0)
+                        .setBias(0.0)
+                        .setRecurrent(false)
+                        .addRangeRelation(Range.Relation.EQUALS, 0)
+        );
+
+        Synapse negSyn = outX.getSynapseById(1);
+        Assert.assertTrue(negSyn.isConjunction);
+        Assert.assertFalse(inN.get().outputSynapses.contains(negSyn));
+
+        boolean incrementalMode = Document.INCREMENTAL_MODE;
+        Document.INCREMENTAL_MODE = true;
+        try {
+            Document doc = m.createDocument("aaaa", 0);
+
+            inA.addInput(doc, 0, 1);
+            doc.process();
+            Activation xAct = outX.getActivation(doc, new Range(0, 1), false);
+            Assert.assertNotNull(xAct);
+            Assert.assertTrue(xAct.isFinalActivation());
+
+            inN.addInput(doc, 0, 1);
+            doc.process();
+
+            Assert.assertEquals(2, xAct.neuronInputs.size());
+            Assert.assertTrue(outX.getActivations(doc, true).isEmpty());
+            doc.clearActivations();
+        } finally {
+            Document.INCREMENTAL_MODE = incrementalMode;
+        }
+    }
+
+
+    /**
+     * The appended input B only links to the entity X1. Since X1 now outweighs the previously selected entity X2,
+     * the decision of X2 changes as well, although X2 is two hops away from the appended input.
+     */
+    @Test
+    public void testChangeSpreadsTwoHops() {
+        Model m = new Model();
+
+        Neuron inA = m.createNeuron("A");
+        Neuron inB = m.createNeuron("B");
+        Neuron inhib = m.createNeuron("INHIB");
+
+        Neuron x1 = Neuron.init(m.createNeuron("X1"),
+                0.5,
+                ActivationFunction.RECTIFIED_HYPERBOLIC_TANGENT,
+                INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(10.0)
+                        .setBias(-10.0)
+                        .setRecurrent(false)
+                        .setRangeOutput(true),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(inB)
+                        .setWeight(2.0)
+                        .setBias(0.0)
+                        .setRecurrent(false)
+                        .addRangeRelation(Range.Relation.EQUALS, 0),
+                new Synapse.Builder()
+                        .setSynapseId(2)
+                        .setNeuron(inhib)
+                        .setWeight(-100.0)
+                        .setBias(0.0)
+                        .setRecurrent(true)
+                        .addRangeRelation(Range.Relation.EQUALS, 0)
+        );
+
+        Neuron x2 = Neuron.init(m.createNeuron("X2"),
+                1.0,
+                ActivationFunction.RECTIFIED_HYPERBOLIC_TANGENT,
+                INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(10.0)
+                        .setBias(-10.0)
+                        .setRecurrent(false)
+                        .setRangeOutput(true),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(inhib)
+                        .setWeight(-100.0)
+                        .setBias(0.0)
+                        .setRecurrent(true)
+                        .addRangeRelation(Range.Relation.EQUALS, 0)
+        );
+
+        Neuron.init(inhib, 0.0, ActivationFunction.RECTIFIED_LINEAR_UNIT, INeuron.Type.INHIBITORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(x1)
+                        .setWeight(1.0)
+                        .setBias(0.0)
+                        .setRecurrent(false)
+                        .setRangeOutput(true),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(x2)
+                        .setWeight(1.0)
+                        .setBias(0.0)
+                        .setRecurrent(false)
+                        .setRangeOutput(true)
+        );
+
+        Document doc = m.createDocument("aaaa", 0);
+        inA.addInput(doc, 0, 1);
+        inB.addInput(doc, 0, 1);
+        doc.process();
+        Assert.assertTrue(x1.getActivation(doc, new Range(0, 1), false).isFinalActivation());
+        Assert.assertFalse(x2.getActivation(doc, new Range(0, 1), false).isFinalActivation());
+        doc.clearActivations();
+
+        boolean incrementalMode = Document.INCREMENTAL_MODE;
+        Document.INCREMENTAL_MODE = true;
+        try {
+            doc = m.createDocument("aaaa", 0);
+
+            inA.addInput(doc, 0, 1);
+            doc.process();
+            Assert.assertFalse(x1.getActivation(doc, new Range(0, 1), false).isFinalActivation());
+            Assert.assertTrue(x2.getActivation(doc, new Range(0, 1), false).isFinalActivation());
+
+            inB.addInput(doc, 0, 1);
+            doc.process();
+            Assert.assertTrue(x1.getActivation(doc, new Range(0, 1), false).isFinalActivation());
+            Assert.assertFalse(x2.getActivation(doc, new Range(0, 1), false).isFinalActivation());
+            doc.clearActivations();
+        } finally {
+            Document.INCREMENTAL_MODE = incrementalMode;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.network;
+
+
+import network.aika.Document;
+import network.aika.MemoryEstimator;
+import network.aika.MemoryReport;
+import network.aika.Model;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Lukas Molzberger
+ */
+public class MemoryReportTest {
+
+    @Test
+    public void testMemoryReport() {
+        boolean trackPeak = Document.TRACK_PEAK_SIZE;
+        Document.TRACK_PEAK_SIZE = true;
+        try {
+            Model m = new Model();
+
+            Neuron inA = m.createNeuron("A");
+            Neuron inB = m.createNeuron("B");
+
+            Neuron pC = m.createNeuron("C");
+            Neuron.init(pC,
+                    0.0,
+                    INeuron.Type.EXCITATORY,
+                    new Synapse.Builder()
+                            .setSynapseId(0)
+                            .setNeuron(inA)
+                            .setWeight(1.0)
+                            .setRecurrent(false)
+                            .setBias(-1.0),
+                    new Synapse.Builder()
+                            .setSynapseId(1)
+                            .setNeuron(inB)
+                            .setWeight(1.0)
+                            .setRecurrent(false)
+                            .setBias(-1.0)
+            );
+
+            Document doc = m.createDocument("aaaaaaaaaa", 0);
+
+            inA.addInput(doc, 0, 6);
+            inB.addInput(doc, 0, 6);
+
+            doc.process();
+
+            MemoryReport report = m.createMemoryReport(3, doc);
+
+            Assert.assertEquals(3, report.largestNodes.size());
+            for(int i = 1; i < report.largestNodes.size(); i++) {
+                Assert.assertTrue(report.largestNodes.get(i - 1).size >= report.largestNodes.get(i).size);
+            }
+            Assert.assertEquals(3, report.countByKind.get("INeuron").intValue());
+            Assert.assertTrue(report.countByKind.containsKey("InputNode"));
+            Assert.assertTrue(report.countByKind.containsKey("OrNode"));
+            Assert.assertEquals(report.totalNodeSize, report.sizeByKind.values().stream().mapToLong(s -> s).sum());
+
+            Assert.assertEquals(1, report.documents.size());
+            MemoryReport.DocumentEntry de = report.documents.get(0);
+            Assert.assertEquals(doc.id, de.id);
+            Assert.assertTrue(de.size > 0);
+            Assert.assertTrue(de.peakSize >= de.size);
+
+            // The documents of other threads are not traversed.
+            Assert.assertEquals(MemoryReport.NOT_ESTIMATED, m.createMemoryReport(3).documents.get(0).size);
+
+            doc.clearActivations();
+
+            Assert.assertTrue(m.createMemoryReport(3).documents.isEmpty());
+            Assert.assertTrue(m.peakDocumentSize >= de.size);
+        } finally {
+            Document.TRACK_PEAK_SIZE = trackPeak;
+        }
+    }
+
+
+    private static class Base {
+        Object a;
+        long b;
+    }
+
+
+    private static class Derived extends Base {
+        static int c;
+        int d;
+        boolean e;
+        byte[] f;
+    }
+
+
+    @Test
+    public void testShallowSize() {
+        // header + 2 references + long + int + boolean
+        Assert.assertEquals(MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 2 * MemoryEstimator.REFERENCE + 8 + 4 + 1), MemoryEstimator.shallowSize(Derived.class));
+        Assert.assertEquals(MemoryEstimator.object(1, 8), MemoryEstimator.shallowSize(Base.class));
+
+        Assert.assertTrue(MemoryEstimator.shallowSize(INeuron.class) > MemoryEstimator.shallowSize(Neuron.class));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.network;
+
+
+import network.aika.Document;
+import network.aika.Model;
+import network.aika.ModelBuilder;
+import network.aika.lattice.AndNode;
+import network.aika.lattice.Node;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import network.aika.neuron.activation.Activation;
+import network.aika.neuron.activation.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+
+/**
+ *
+ * @author Lukas Molzberger
+ */
+public class ModelBuilderTest {
+
+    private static final String LETTERS = "abcde";
+    private static final String TEXT = "abcdeedcbaabbacddeaecbdaebcdaacebd";
+
+
+    private static List<String> createWords() {
+        Random r = new Random(42);
+        Set<String> words = new TreeSet<>();
+        while(words.size() < 60) {
+            StringBuilder sb = new StringBuilder();
+            int l = 2 + r.nextInt(3);
+            for(int i = 0; i < l; i++) {
+                sb.append(LETTERS.charAt(r.nextInt(LETTERS.length())));
+            }
+            words.add(sb.toString());
+        }
+        return new ArrayList<>(words);
+    }
+
+
+    private static List<Synapse.Builder> createInputs(Map<Character, Neuron> letters, String word) {
+        List<Synapse.Builder> inputs = new ArrayList<>();
+        for(int i = 0; i < word.length(); i++) {
+            Synapse.Builder sb = new Synapse.Builder()
+                    .setSynapseId(i)
+                    .setNeuron(letters.get(word.charAt(i)))
+                    .setWeight(1.0)
+                    .setBias(-1.0)
+                    .setRecurrent(false)
+                    .setRangeOutput(i == 0, i == word.length() - 1);
+            if(i < word.length() - 1) {
+                sb.addRangeRelation(Range.Relation.END_TO_BEGIN_EQUALS, i + 1);
+            }
+            inputs.add(sb);
+        }
+        return inputs;
+    }
+
+
+    private static Set<String> process(Model m, Map<Character, Neuron> letters, List<Neuron> words) {
+        Document doc = m.createDocument(TEXT, 0);
+        for(int i = 0; i < TEXT.length(); i++) {
+            letters.get(TEXT.charAt(i)).addInput(doc, i, i + 1);
+        }
+
+        Set<String> results = new TreeSet<>();
+        for(Neuron n: words) {
+            if(n == null) continue;
+            for(Activation act: n.getActivations(doc, false)) {
+                results.add(act.getLabel() + " " + act.range);
+            }
+        }
+        doc.clearActivations();
+        return results;
+    }
+
+
+    private static Map<Integer, Integer> countAndNodesByLevel(Collection<Neuron> letters) {
+        Set<AndNode> andNodes = new HashSet<>();
+        ArrayDeque<Node<?, ?>> queue = new ArrayDeque<>();
+        for(Neuron n: letters) {
+            queue.add(n.get().outputNode.get());
+        }
+        while(!queue.isEmpty()) {
+            Node<?, ?> n = queue.poll();
+            if(n.andChildren == null) continue;
+            for(AndNode.RefValue rv: n.andChildren.values()) {
+                AndNode c = rv.child.get();
+                if(andNodes.add(c)) {
+                    queue.add(c);
+                }
+            }
+        }
+
+        Map<Integer, Integer> results = new TreeMap<>();
+        for(AndNode n: andNodes) {
+            results.merge(n.level, 1, Integer::sum);
+        }
+        return results;
+    }
+
+
+    @Test
+    public void testBulkConstruction() {
+        List<String> words = createWords();
+
+        Model m = new Model();
+        Map<Character, Neuron> letters = new TreeMap<>();
+        for(char c: LETTERS.toCharArray()) {
+            letters.put(c, m.createNeuron(c + ""));
+        }
+        List<Neuron> wordNeurons = new ArrayList<>();
+        for(String w: words) {
+            wordNeurons.add(Neuron.init(m.createNeuron(w), 0.001, INeuron.Type.EXCITATORY, createInputs(letters, w)));
+        }
+
+        Model bm = new Model(null, 4);
+        Map<Character, Neuron> bLetters = new TreeMap<>();
+        for(char c: LETTERS.toCharArray()) {
+            bLetters.put(c, bm.createNeuron(c + ""));
+        }
+        ModelBuilder builder = new ModelBuilder(bm);
+        for(String w: words) {
+            builder.add(bm.createNeuron(w), 0.001, null, INeuron.Type.EXCITATORY, createInputs(bLetters, w));
+        }
+        Assert.assertEquals(words.size(), builder.size());
+        List<Neuron> bWordNeurons = builder.build(4);
+
+        Assert.assertEquals(words.size(), bWordNeurons.size());
+        for(int i = 0; i < words.size(); i++) {
+            Assert.assertEquals(wordNeurons.get(i) != null, bWordNeurons.get(i) != null);
+        }
+
+        Assert.assertEquals(countAndNodesByLevel(letters.values()), countAndNodesByLevel(bLetters.values()));
+
+        Set<String> expected = process(m, letters, wordNeurons);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, process(bm, bLetters, bWordNeurons));
+    }
+}
@@ -1,6 +1,7 @@
 package network.aika.network;
 
 
+import network.aika.ActivationFunction;
 import network.aika.Document;
 import network.aika.Model;
 import network.aika.neuron.Neuron;
@@ -8,6 +9,7 @@ import network.aika.neuron.Synapse;
 import network.aika.neuron.INeuron;
 import network.aika.neuron.activation.Activation;
 import network.aika.neuron.activation.Range;
+import network.aika.neuron.relation.InstanceRelation;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -326,4 +328,94 @@ public class RelationsTest {
         Assert.assertTrue(nC.getActivations(doc, true).isEmpty());
 
     }
+
+
+    /**
+     * B and C are linked to each other through identity synapses, one of them being recurrent. The identity
+     * ancestry of the activations on this cycle must still contain the input activation A.
+     */
+    @Test
+    public void testRecurrentIdentityCycle() {
+        Model m = new Model();
+        Document doc = m.createDocument("aaaaaaaaaa", 0);
+
+        Neuron inA = m.createNeuron("A");
+        Neuron nB = m.createNeuron("B");
+        Neuron nC = m.createNeuron("C");
+
+        Neuron.init(nB, 0.0, ActivationFunction.RECTIFIED_LINEAR_UNIT, INeuron.Type.INHIBITORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(1.0)
+                        .setBias(0.0)
+                        .setRecurrent(false)
+                        .setIdentity(true)
+                        .setRangeOutput(true),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(nC)
+                        .setWeight(1.0)
+                        .setBias(0.0)
+                        .setRecurrent(true)
+                        .setIdentity(true)
+                        .setRangeOutput(true)
+        );
+
+        Neuron.init(nC, 5.0, INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(nB)
+                        .setWeight(10.0)
+                        .setBias(-10.0)
+                        .setRecurrent(false)
+                        .setIdentity(true)
+                        .setRangeOutput(true)
+        );
+
+        Neuron nD = Neuron.init(m.createNeuron("D"), 5.0, INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(10.0)
+                        .setBias(-10.0)
+                        .setRecurrent(false)
+                        .setIdentity(true)
+                        .setRangeOutput(true)
+        );
+
+        Neuron inE = m.createNeuron("E");
+
+        inA.addInput(doc, 0, 1);
+        inE.addInput(doc, 0, 1);
+
+        doc.process();
+
+        Range r = new Range(0, 1);
+        Activation actA = inA.get().getActivation(doc, r, false);
+        Activation actB = nB.get().getActivation(doc, r, false);
+        Activation actC = nC.get().getActivation(doc, r, false);
+        Activation actD = nD.get().getActivation(doc, r, false);
+        Activation actE = inE.get().getActivation(doc, r, false);
+
+        Assert.assertTrue(actB.neuronInputs.values().stream().anyMatch(l -> l.input == actC));
+
+        InstanceRelation contains = new InstanceRelation(InstanceRelation.Type.CONTAINS);
+        InstanceRelation commonAncestor = new InstanceRelation(COMMON_ANCESTOR);
+
+        // Computes the ancestry of B first, so that C is reached while B is still in progress.
+        Assert.assertTrue(contains.test(actB, actA));
+        Assert.assertTrue(contains.test(actC, actA));
+        Assert.assertTrue(contains.test(actB, actC));
+        Assert.assertTrue(contains.test(actC, actB));
+        Assert.assertFalse(contains.test(actD, actC));
+
+        Assert.assertTrue(commonAncestor.test(actC, actD));
+        Assert.assertTrue(commonAncestor.test(actB, actD));
+        Assert.assertFalse(commonAncestor.test(actC, actE));
+
+        // The activations outside of the cycle keep their indexed ancestry.
+        Assert.assertNotNull(actD.getIdentityAncestors());
+        Assert.assertNull(actC.getIdentityAncestors());
+    }
 }
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.network;
+
+
+import network.aika.ActivationFunction;
+import network.aika.DecisionCache;
+import network.aika.Document;
+import network.aika.Model;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import network.aika.neuron.activation.Activation;
+import network.aika.neuron.activation.Candidate;
+import network.aika.neuron.activation.Range;
+import network.aika.neuron.activation.SearchNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+
+/**
+ *
+ * @author Lukas Molzberger
+ */
+public class SearchConfigTest {
+
+    private static final int NUMBER_OF_WORDS = 6;
+
+    private ExclusiveEntitiesModel em;
+
+
+    private Document createDocument() {
+        Document doc = em.createDocument(NUMBER_OF_WORDS);
+        em.addWords(doc, 0, NUMBER_OF_WORDS);
+        return doc;
+    }
+
+
+    private Set<String> processDocument(SearchNode.Config config) {
+        Document doc = createDocument();
+        doc.process(config);
+
+        Assert.assertEquals(doc.candidates.size(), doc.selectedSearchNode.getLevel());
+
+        Set<String> results = ExclusiveEntitiesModel.getFinalEntities(doc);
+        doc.clearActivations();
+        return results;
+    }
+
+
+    @Test
+    public void testBeamSearch() {
+        em = new ExclusiveEntitiesModel();
+
+        Set<String> exhaustive = processDocument(new SearchNode.Config());
+        Assert.assertEquals(NUMBER_OF_WORDS, exhaustive.size());
+        for(String s: exhaustive) {
+            Assert.assertTrue(s, s.startsWith("E-1"));
+        }
+
+        Assert.assertEquals(exhaustive, processDocument(new SearchNode.Config().setBeamWidth(1000)));
+
+        Document doc = createDocument();
+        doc.process(new SearchNode.Config());
+        double optimum = doc.selectedSearchNode.accumulatedWeight;
+        doc.clearActivations();
+
+        // Following the first decision of each candidate, as a depth first search with an exhausted budget does,
+        // leads to a suboptimal interpretation.
+        doc = createDocument();
+        doc.process(new SearchNode.Config().setMaxSteps(1));
+        Set<String> greedy = ExclusiveEntitiesModel.getFinalEntities(doc);
+        double greedyWeight = doc.selectedSearchNode.accumulatedWeight;
+        doc.clearActivations();
+        Assert.assertTrue(greedyWeight < optimum);
+        Assert.assertNotEquals(exhaustive, greedy);
+
+        // A beam that keeps one partial interpretation per alternative entity finds the optimum.
+        doc = createDocument();
+        doc.process(new SearchNode.Config().setBeamWidth(3));
+        Assert.assertEquals(doc.candidates.size(), doc.selectedSearchNode.getLevel());
+        Assert.assertTrue(doc.approximateInterpretation);
+        Assert.assertEquals(optimum, doc.selectedSearchNode.accumulatedWeight, 0.0001);
+        Assert.assertEquals(exhaustive, ExclusiveEntitiesModel.getFinalEntities(doc));
+        // Each entry of the beam is expanded once per level, without replaying its decisions.
+        Assert.assertTrue(doc.searchStepCounter <= 3 * doc.candidates.size());
+        doc.clearActivations();
+
+        doc = createDocument();
+        doc.process(new SearchNode.Config().setBeamWidth(1));
+        Assert.assertEquals(doc.candidates.size(), doc.selectedSearchNode.getLevel());
+        Assert.assertTrue(doc.approximateInterpretation);
+        Assert.assertEquals(NUMBER_OF_WORDS, ExclusiveEntitiesModel.getFinalEntities(doc).size());
+        doc.clearActivations();
+    }
+
+
+    @Test
+    public void testSearchBudget() {
+        em = new ExclusiveEntitiesModel();
+
+        Set<String> exhaustive = processDocument(new SearchNode.Config());
+
+        Document doc = createDocument();
+        doc.process(new SearchNode.Config().setMaxSteps(100000).setMaxNodes(100000).setTimeBudget(100000L));
+        Assert.assertFalse(doc.approximateInterpretation);
+        Assert.assertEquals(exhaustive, ExclusiveEntitiesModel.getFinalEntities(doc));
+        doc.clearActivations();
+
+        doc = createDocument();
+        doc.process(new SearchNode.Config().setMaxSteps(3));
+        Assert.assertTrue(doc.approximateInterpretation);
+        Assert.assertEquals(doc.candidates.size(), doc.selectedSearchNode.getLevel());
+        Assert.assertEquals(NUMBER_OF_WORDS, ExclusiveEntitiesModel.getFinalEntities(doc).size());
+        Assert.assertTrue(doc.searchStepCounter <= doc.candidates.size() + 3);
+        doc.clearActivations();
+
+        // The global step limit and the timeout stop the search in the same way.
+        int maxSearchSteps = SearchNode.MAX_SEARCH_STEPS;
+        SearchNode.MAX_SEARCH_STEPS = 3;
+        try {
+            doc = createDocument();
+            doc.process();
+            Assert.assertTrue(doc.approximateInterpretation);
+            Assert.assertEquals(doc.candidates.size(), doc.selectedSearchNode.getLevel());
+            Assert.assertEquals(NUMBER_OF_WORDS, ExclusiveEntitiesModel.getFinalEntities(doc).size());
+            doc.clearActivations();
+        } finally {
+            SearchNode.MAX_SEARCH_STEPS = maxSearchSteps;
+        }
+
+        doc = createDocument();
+        doc.process(0L);
+        Assert.assertEquals(doc.candidates.size(), doc.selectedSearchNode.getLevel());
+        Assert.assertEquals(NUMBER_OF_WORDS, ExclusiveEntitiesModel.getFinalEntities(doc).size());
+        doc.clearActivations();
+    }
+
+
+    @Test
+    public void testBranchAndBound() {
+        em = new ExclusiveEntitiesModel();
+
+        Document doc = createDocument();
+        doc.process(new SearchNode.Config());
+        Set<String> exhaustive = ExclusiveEntitiesModel.getFinalEntities(doc);
+        double exhaustiveWeight = doc.selectedSearchNode.accumulatedWeight;
+        int exhaustiveSteps = doc.searchStepCounter;
+        doc.clearActivations();
+
+        doc = createDocument();
+        doc.process(new SearchNode.Config().setBranchAndBound(true));
+        Assert.assertFalse(doc.approximateInterpretation);
+        Assert.assertEquals(exhaustive, ExclusiveEntitiesModel.getFinalEntities(doc));
+        Assert.assertEquals(exhaustiveWeight, doc.selectedSearchNode.accumulatedWeight, 0.0001);
+        Assert.assertTrue(doc.searchStepCounter + " " + exhaustiveSteps, doc.searchStepCounter < exhaustiveSteps);
+        doc.clearActivations();
+    }
+
+
+    @Test
+    public void testDecisionCache() {
+        em = new ExclusiveEntitiesModel();
+
+        Document doc = createDocument();
+        doc.process();
+        Set<String> exhaustive = ExclusiveEntitiesModel.getFinalEntities(doc);
+        int exhaustiveSteps = doc.searchStepCounter;
+        doc.clearActivations();
+
+        DecisionCache dc = new DecisionCache(100);
+        em.m.setDecisionCache(dc);
+
+        Assert.assertEquals(exhaustive, processDocument(new SearchNode.Config()));
+        Assert.assertEquals(0, dc.hits);
+        Assert.assertEquals(1, dc.size());
+
+        doc = createDocument();
+        doc.process();
+        Assert.assertEquals(NUMBER_OF_WORDS, dc.hits);
+        Assert.assertEquals(exhaustive, ExclusiveEntitiesModel.getFinalEntities(doc));
+        Assert.assertTrue(doc.searchStepCounter < exhaustiveSteps);
+        for(Activation act: doc.activationsByRangeBegin.values()) {
+            if(act.getLabel().startsWith("E-")) {
+                Assert.assertEquals(SearchNode.Decision.UNKNOWN, act.inputDecision);
+            }
+        }
+        doc.clearActivations();
+
+        // Converting an unrelated neuron keeps the entry.
+        INeuron.update(em.m.defaultThreadId, null, em.m.createNeuron("X"), 0.0, Collections.emptyList());
+        Assert.assertEquals(1, dc.size());
+
+        INeuron.update(em.m.defaultThreadId, null, em.entities[1], 5.0, Collections.emptyList());
+        Assert.assertEquals(0, dc.size());
+
+        // The decisions of a document that has been searched before a commit of one of its neurons are not stored.
+        em.m.setDecisionCache(null);
+        doc = createDocument();
+        doc.process();
+
+        List<DecisionCache.Component> components = dc.apply(doc);
+        dc.store(doc, components);
+        Assert.assertEquals(1, dc.size());
+        dc.clear();
+
+        components = dc.apply(doc);
+        INeuron.update(em.m.defaultThreadId, null, em.entities[1], 5.0, Collections.emptyList());
+        dc.store(doc, components);
+        Assert.assertEquals(0, dc.size());
+        doc.clearActivations();
+    }
+
+
+    @Test
+    public void testConflictGraph() {
+        em = new ExclusiveEntitiesModel();
+
+        Document doc = createDocument();
+        doc.process();
+
+        for(Candidate c: doc.candidates) {
+            Set<Integer> expected = new TreeSet<>();
+            for(Activation cAct: c.activation.getConflicts()) {
+                if(cAct.candidate != null) {
+                    expected.add(cAct.candidate.id);
+                }
+            }
+            Set<Integer> actual = new TreeSet<>();
+            for(int id: c.conflicts) {
+                actual.add(id);
+            }
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(c.activation.decision == SearchNode.Decision.SELECTED, doc.selectedCandidates.get(c.id));
+        }
+        doc.clearActivations();
+    }
+
+
+    /**
+     * Each entity is inhibited by two inhibitory neurons. Flipping the decision of an entity of the first group only
+     * invalidates the cached self referencing checks of the links leaving the first inhibitory neuron, so the checks
+     * of the links leaving the second one are reused when the entities are evaluated again. The search has to take
+     * exactly the same course as without the cache.
+     */
+    @Test
+    public void testSelfReferencingCache() {
+        Model m = new Model();
+        Neuron in = m.createNeuron("IN");
+        Neuron inhibA = m.createNeuron("INHIB-A");
+        Neuron inhibB = m.createNeuron("INHIB-B");
+
+        Neuron[] entities = new Neuron[4];
+        for(int i = 0; i < entities.length; i++) {
+            entities[i] = Neuron.init(
+                    m.createNeuron("E-" + i),
+                    1.0 + i,
+                    ActivationFunction.RECTIFIED_HYPERBOLIC_TANGENT,
+                    INeuron.Type.EXCITATORY,
+                    new Synapse.Builder()
+                            .setSynapseId(0)
+                            .setNeuron(in)
+                            .setWeight(10.0)
+                            .setBias(-10.0)
+                            .setRecurrent(false)
+                            .setRangeOutput(true),
+                    new Synapse.Builder()
+                            .setSynapseId(1)
+                            .setNeuron(i < 2 ? inhibA : inhibB)
+                            .setWeight(-100.0)
+                            .setBias(0.0)
+                            .setRecurrent(true)
+                            .addRangeRelation(Range.Relation.EQUALS, 0),
+                    new Synapse.Builder()
+                            .setSynapseId(2)
+                            .setNeuron(i < 2 ? inhibB : inhibA)
+                            .setWeight(-100.0)
+                            .setBias(0.0)
+                            .setRecurrent(true)
+                            .addRangeRelation(Range.Relation.EQUALS, 0)
+            );
+        }
+
+        for(int g = 0; g < 2; g++) {
+            Synapse.Builder[] inhibInputs = new Synapse.Builder[2];
+            for(int i = 0; i < 2; i++) {
+                inhibInputs[i] = new Synapse.Builder()
+                        .setSynapseId(i)
+                        .setNeuron(entities[(2 * g) + i])
+                        .setWeight(1.0)
+                        .setBias(0.0)
+                        .setRecurrent(false)
+                        .setRangeOutput(true);
+            }
+            Neuron.init(g == 0 ? inhibA : inhibB, 0.0, ActivationFunction.RECTIFIED_LINEAR_UNIT, INeuron.Type.INHIBITORY, inhibInputs);
+        }
+
+        Document doc = createSelfReferencingDocument(m, in);
+        doc.process();
+        Set<String> cachedResults = ExclusiveEntitiesModel.getFinalEntities(doc);
+        double cachedWeight = doc.selectedSearchNode.accumulatedWeight;
+        int cachedSteps = doc.searchStepCounter;
+        doc.clearActivations();
+        Assert.assertEquals(4, cachedResults.size());
+
+        Activation.ENABLE_SELF_REFERENCING_CACHE = false;
+        try {
+            doc = createSelfReferencingDocument(m, in);
+            doc.process();
+            Assert.assertEquals(cachedResults, ExclusiveEntitiesModel.getFinalEntities(doc));
+            Assert.assertEquals(cachedWeight, doc.selectedSearchNode.accumulatedWeight, 0.0);
+            Assert.assertEquals(cachedSteps, doc.searchStepCounter);
+            doc.clearActivations();
+        } finally {
+            Activation.ENABLE_SELF_REFERENCING_CACHE = true;
+        }
+    }
+
+
+    private Document createSelfReferencingDocument(Model m, Neuron in) {
+        Document doc = m.createDocument("w w w w ", 0);
+        for(int i = 0; i < 4; i++) {
+            in.addInput(doc, i * 2, (i * 2) + 1);
+        }
+        return doc;
+    }
+}
@@ -32,6 +32,8 @@ import org.junit.Test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  *
@@ -209,5 +211,88 @@ public class SimplePatternMatchingTest {
 
         doc.clearActivations();
     }
-    
+
+
+    @Test
+    public void testPatternMatchingInputBatch() {
+        Model m = new Model();
+
+        Map<Character, Neuron> inputNeurons = new HashMap<>();
+        for(char c: new char[] {'a', 'b', 'c', 'd', 'e'}) {
+            inputNeurons.put(c, m.createNeuron(c + ""));
+        }
+
+        Neuron pattern = Neuron.init(
+                m.createNeuron("BCD"),
+                5.0,
+                ActivationFunction.RECTIFIED_HYPERBOLIC_TANGENT,
+                INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inputNeurons.get('b'))
+                        .setWeight(10.0)
+                        .setBias(-10.0)
+                        .setRecurrent(false)
+                        .addRangeRelation(Range.Relation.END_TO_BEGIN_EQUALS, 1)
+                        .setRangeOutput(true, false),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(inputNeurons.get('c'))
+                        .setWeight(10.0)
+                        .setBias(-10.0)
+                        .setRecurrent(false)
+                        .addRangeRelation(Range.Relation.END_TO_BEGIN_EQUALS, 2),
+                new Synapse.Builder()
+                        .setSynapseId(2)
+                        .setNeuron(inputNeurons.get('d'))
+                        .setWeight(10.0)
+                        .setBias(-10.0)
+                        .setRecurrent(false)
+                        .setRangeOutput(false, true)
+        );
+
+        String txt = "a b c d e b c d a b c d ";
+
+        Document doc = m.createDocument(txt, 0);
+        for(int i = 0; i < doc.length(); i++) {
+            char c = doc.getContent().charAt(i);
+            if(c != ' ') {
+                inputNeurons.get(c).addInput(doc, i, i + 2);
+            }
+        }
+        int numberOfNodeActivations = doc.addedNodeActivations.size();
+        doc.process();
+
+        Set<String> expected = getFinalActivations(doc);
+        Assert.assertEquals(3, pattern.getActivations(doc, true).size());
+        doc.clearActivations();
+
+        doc = m.createDocument(txt, 0);
+        Document.InputBatch batch = doc.createInputBatch();
+        for(int i = 0; i < doc.length(); i++) {
+            char c = doc.getContent().charAt(i);
+            if(c != ' ') {
+                batch.add(inputNeurons.get(c), i, i + 2);
+            }
+        }
+        Assert.assertTrue(doc.addedNodeActivations.isEmpty());
+
+        Assert.assertEquals(12, batch.process().size());
+        Assert.assertEquals(numberOfNodeActivations, doc.addedNodeActivations.size());
+        doc.process();
+
+        Assert.assertEquals(expected, getFinalActivations(doc));
+        doc.clearActivations();
+    }
+
+
+    private static Set<String> getFinalActivations(Document doc) {
+        Set<String> results = new TreeSet<>();
+        for(Activation act: doc.activationsByRangeBegin.values()) {
+            if(act.isFinalActivation()) {
+                results.add(act.getLabel() + " " + act.range + " " + act.getFinalState().value);
+            }
+        }
+        return results;
+    }
 }
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.network;
+
+
+import network.aika.Document;
+import network.aika.Model;
+import network.aika.StreamingDocument;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import network.aika.neuron.activation.Activation;
+import network.aika.neuron.activation.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ *
+ * @author Lukas Molzberger
+ */
+public class StreamingDocumentTest {
+
+    private static final int NUMBER_OF_WORDS = 20;
+    private static final String[] WORDS = new String[] {"aaa", "bb", "c"};
+
+    private ExclusiveEntitiesModel em;
+
+
+    private static String getWord(int i) {
+        return WORDS[i % WORDS.length];
+    }
+
+
+    private static String toString(Document doc, Activation act) {
+        return act.getLabel() + " " + act.range + " " + doc.getText(act.range);
+    }
+
+
+    @Test
+    public void testStreamingDocument() {
+        em = new ExclusiveEntitiesModel();
+
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < NUMBER_OF_WORDS; i++) {
+            sb.append(getWord(i) + " ");
+        }
+
+        Document doc = em.m.createDocument(sb.toString(), 0);
+        int pos = 0;
+        for(int i = 0; i < NUMBER_OF_WORDS; i++) {
+            em.addWord(doc, pos, pos + getWord(i).length());
+            pos += getWord(i).length() + 1;
+        }
+        doc.process();
+
+        List<String> expected = new ArrayList<>();
+        for(Activation act: doc.activationsByRangeBegin.values()) {
+            if(act.isFinalActivation() && act.getLabel().startsWith("E-")) {
+                expected.add(toString(doc, act));
+            }
+        }
+        doc.clearActivations();
+
+        List<String> results = new ArrayList<>();
+        StreamingDocument[] sDoc = new StreamingDocument[1];
+        sDoc[0] = em.m.createStreamingDocument(0, 4, act -> {
+            if(act.getLabel().startsWith("E-")) {
+                results.add(toString(sDoc[0], act));
+            }
+        });
+
+        int maxActivations = 0;
+        for(int i = 0; i < NUMBER_OF_WORDS; i += 2) {
+            for(int j = i; j < i + 2; j++) {
+                int begin = sDoc[0].appendText(getWord(j) + " ");
+                em.addWord(sDoc[0], begin, begin + getWord(j).length());
+            }
+            sDoc[0].process();
+
+            maxActivations = Math.max(maxActivations, sDoc[0].activationsByRangeBegin.size());
+        }
+
+        Assert.assertTrue(sDoc[0].numberOfRetiredActivations > 0);
+        Assert.assertTrue(sDoc[0].getContent().length() < sb.length() / 2);
+
+        sDoc[0].finish();
+
+        Assert.assertEquals(expected, results);
+        // Only the activations of the last few words are kept in the document.
+        Assert.assertTrue(maxActivations <= 4 * 7);
+        Assert.assertNull(em.m.docs[0]);
+    }
+
+
+    /**
+     * Creates the pattern neuron AB, which matches an A that is directly followed by a B.
+     */
+    private static Neuron initPatternModel(Model m, Neuron inA, Neuron inB) {
+        return Neuron.init(m.createNeuron("AB"),
+                5.0,
+                INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(10.0)
+                        .setRecurrent(false)
+                        .setBias(-10.0)
+                        .addRangeRelation(Range.Relation.END_TO_BEGIN_EQUALS, 1)
+                        .setRangeOutput(true, false),
+                new Synapse.Builder()
+                        .setSynapseId(1)
+                        .setNeuron(inB)
+                        .setWeight(10.0)
+                        .setRecurrent(false)
+                        .setBias(-10.0)
+                        .setRangeOutput(false, true)
+        );
+    }
+
+
+    /**
+     * The pattern activation begins in the first chunk and ends in the second one. The activation of the first
+     * chunk has to stay in the document until the input of the second chunk has been linked to it.
+     */
+    @Test
+    public void testRangeAcrossChunkBoundary() {
+        Model m = new Model();
+        Neuron inA = m.createNeuron("A");
+        Neuron inB = m.createNeuron("B");
+        initPatternModel(m, inA, inB);
+
+        List<String> results = new ArrayList<>();
+        StreamingDocument[] sDoc = new StreamingDocument[1];
+        sDoc[0] = m.createStreamingDocument(0, 1, act -> results.add(toString(sDoc[0], act)));
+
+        int begin = sDoc[0].appendText("xa");
+        inA.addInput(sDoc[0], begin + 1, begin + 2);
+        sDoc[0].process();
+        Assert.assertEquals(0, sDoc[0].numberOfRetiredActivations);
+
+        begin = sDoc[0].appendText("bx");
+        inB.addInput(sDoc[0], begin, begin + 1);
+        sDoc[0].process();
+
+        sDoc[0].finish();
+
+        Assert.assertTrue(results.contains("AB (1,3) ab"));
+        Assert.assertNull(m.docs[0]);
+    }
+
+
+    /**
+     * The input activation A is retired while the pattern activation that is linked to it still remains in the
+     * document. The pattern activation has to keep its value and its text.
+     */
+    @Test
+    public void testRetireReferencedActivation() {
+        Model m = new Model();
+        Neuron inA = m.createNeuron("A");
+        Neuron inB = m.createNeuron("B");
+        Neuron outAB = initPatternModel(m, inA, inB);
+
+        Document doc = m.createDocument("xabbbx", 0);
+        inA.addInput(doc, 1, 2);
+        inB.addInput(doc, 2, 5);
+        doc.process();
+        Activation expected = outAB.get().getActivation(doc, new Range(1, 5), false);
+        Assert.assertNotNull(expected);
+        Assert.assertTrue(expected.isFinalActivation());
+        String expectedValue = expected.getFinalState().toString();
+        doc.clearActivations();
+
+        List<String> results = new ArrayList<>();
+        StreamingDocument[] sDoc = new StreamingDocument[1];
+        sDoc[0] = m.createStreamingDocument(0, 2, act -> {
+            if(act.getNeuron() == outAB) {
+                results.add(toString(sDoc[0], act) + " " + act.getFinalState());
+            }
+        });
+
+        int begin = sDoc[0].appendText("xa");
+        inA.addInput(sDoc[0], begin + 1, begin + 2);
+        sDoc[0].process();
+
+        begin = sDoc[0].appendText("bbbx");
+        inB.addInput(sDoc[0], begin, begin + 3);
+        sDoc[0].process();
+
+        // A has been retired, while the pattern activation that references it is still part of the window.
+        Assert.assertNull(inA.get().getActivation(sDoc[0], new Range(1, 2), false));
+        Activation ab = outAB.get().getActivation(sDoc[0], new Range(1, 5), false);
+        Assert.assertNotNull(ab);
+        Assert.assertEquals(1, sDoc[0].numberOfRetiredActivations);
+        Assert.assertTrue(ab.neuronInputs.values().stream().anyMatch(l -> l.input.getNeuron() == inA));
+        Assert.assertTrue(results.isEmpty());
+
+        sDoc[0].appendText("xx");
+        sDoc[0].process();
+        sDoc[0].finish();
+
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals("AB (1,5) abbb " + expectedValue, results.get(0));
+    }
+}
@@ -0,0 +1,158 @@
+package network.aika.network;
+
+import network.aika.Model;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import network.aika.neuron.SynapseIdMap;
+import network.aika.neuron.SynapseSet;
+import network.aika.neuron.activation.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+
+public class SynapseCollectionsTest {
+
+
+    @Test
+    public void testSynapseIdMap() {
+        Model m = new Model();
+        Neuron in = m.createNeuron("IN");
+        Neuron out = m.createNeuron("OUT");
+
+        SynapseIdMap map = new SynapseIdMap();
+        for(int i = 0; i < 1000; i++) {
+            map.put(createSynapse(in, out, i * 7));
+        }
+        Assert.assertEquals(1000, map.size());
+
+        for(int i = 0; i < 1000; i += 2) {
+            Assert.assertNotNull(map.remove(i * 7));
+        }
+        Assert.assertEquals(500, map.size());
+        Assert.assertNull(map.remove(0));
+
+        for(int i = 0; i < 1000; i++) {
+            Synapse s = map.get(i * 7);
+            if(i % 2 == 0) {
+                Assert.assertNull(s);
+            } else {
+                Assert.assertEquals(i * 7, s.id.intValue());
+            }
+        }
+        Assert.assertNull(map.get(3));
+
+        // The removed synapses leave tombstones that are reused, so the table does not grow under churn.
+        long estimatedSize = map.estimateSize();
+        for(int i = 0; i < 10000; i++) {
+            int id = 7000 + (i % 100);
+            map.put(createSynapse(in, out, id));
+            Assert.assertEquals(id, map.get(id).id.intValue());
+            Assert.assertNotNull(map.remove(id));
+            Assert.assertNull(map.get(id));
+        }
+        Assert.assertEquals(500, map.size());
+        Assert.assertEquals(estimatedSize, map.estimateSize());
+
+        for(int i = 0; i < 1000; i += 2) {
+            Assert.assertNull(map.put(createSynapse(in, out, i * 7)));
+        }
+        Assert.assertEquals(1000, map.size());
+        for(int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i * 7, map.get(i * 7).id.intValue());
+        }
+    }
+
+
+    @Test
+    public void testSynapseSet() {
+        Model m = new Model();
+        Neuron out = m.createNeuron("OUT");
+
+        List<Neuron> inputs = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            inputs.add(m.createNeuron("IN-" + i));
+        }
+
+        SynapseSet set = new SynapseSet(Synapse.INPUT_SYNAPSE_COMP);
+        TreeMap<Synapse, Synapse> reference = new TreeMap<>(Synapse.INPUT_SYNAPSE_COMP);
+
+        List<Synapse> bulk = new ArrayList<>();
+        for(int i = 19; i >= 0; i--) {
+            Synapse s = createSynapse(inputs.get(i), out, i);
+            reference.put(s, s);
+            if(i % 3 == 0) {
+                bulk.add(s);
+            } else {
+                Assert.assertTrue(set.add(s));
+            }
+        }
+        set.addAll(bulk);
+
+        Assert.assertEquals(reference.size(), set.size());
+        Assert.assertArrayEquals(reference.values().toArray(), set.values().toArray());
+
+        Synapse s5 = reference.keySet().stream().filter(s -> s.id == 5).findFirst().get();
+        Assert.assertTrue(set.contains(s5));
+        Assert.assertTrue(set.remove(s5));
+        Assert.assertFalse(set.remove(s5));
+        Assert.assertFalse(set.contains(s5));
+        Assert.assertEquals(19, set.size());
+
+        Synapse replacement = createSynapse(inputs.get(7), out, 7);
+        Assert.assertFalse(set.add(replacement));
+        Assert.assertSame(replacement, set.ceiling(replacement));
+        Assert.assertEquals(19, set.size());
+    }
+
+
+    @Test(timeout = 10000)
+    public void testLargeSynapseSet() {
+        Model m = new Model();
+        Neuron in = m.createNeuron("IN");
+        Neuron out = m.createNeuron("OUT");
+
+        int n = 50000;
+        List<Synapse> syns = new ArrayList<>();
+        for(int i = 0; i < n; i++) {
+            syns.add(createSynapse(in, out, i));
+        }
+        Collections.shuffle(syns, new Random(42));
+
+        SynapseSet set = new SynapseSet(Synapse.INPUT_SYNAPSE_COMP);
+        TreeMap<Synapse, Synapse> reference = new TreeMap<>(Synapse.INPUT_SYNAPSE_COMP);
+        for(int i = 0; i < n; i++) {
+            Synapse s = syns.get(i);
+            Assert.assertTrue(set.add(s));
+            reference.put(s, s);
+
+            if(i % 1000 == 0) {
+                Assert.assertEquals(reference.size(), set.size());
+                Assert.assertSame(reference.firstKey(), set.first());
+                Assert.assertTrue(set.contains(syns.get(i / 2)));
+            }
+        }
+        Assert.assertArrayEquals(reference.values().toArray(), set.values().toArray());
+
+        for(int i = 0; i < n; i += 3) {
+            Synapse s = syns.get(i);
+            Assert.assertTrue(set.remove(s));
+            reference.remove(s);
+        }
+        Assert.assertEquals(reference.size(), set.size());
+        Assert.assertArrayEquals(reference.values().toArray(), set.stream().toArray());
+
+        Synapse s = syns.get(1);
+        Assert.assertSame(reference.ceilingKey(s), set.ceiling(s));
+    }
+
+
+    private static Synapse createSynapse(Neuron in, Neuron out, int id) {
+        return new Synapse(in, out, id, new Synapse.Key(false, Range.Output.NONE, false), new TreeMap<>(), null);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.training;
+
+import network.aika.Document;
+import network.aika.Model;
+import network.aika.neuron.INeuron;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Lukas Molzberger
+ */
+public class ConcurrentTrainingTest {
+
+
+    @Test
+    public void testConcurrentDeltaAccumulation() throws InterruptedException {
+        int numberOfThreads = 4;
+        int numberOfUpdates = 10000;
+
+        Model m = new Model(null, numberOfThreads);
+        m.concurrentTraining = true;
+
+        Neuron inA = m.createNeuron("A");
+        Neuron outB = m.createNeuron("B");
+
+        Neuron.init(outB, 0.0, INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(0.0)
+        );
+
+        Synapse s = outB.inMemoryInputSynapses.first();
+        Assert.assertEquals(1.0, s.weight, 0.0);
+
+        Document[] docs = new Document[numberOfThreads];
+        Thread[] threads = new Thread[numberOfThreads];
+        for(int t = 0; t < numberOfThreads; t++) {
+            Document doc = m.createDocument("Bla", t);
+            docs[t] = doc;
+            threads[t] = new Thread(() -> {
+                for(int i = 0; i < numberOfUpdates; i++) {
+                    s.updateDelta(doc, 0.0001, -0.0001);
+                    outB.get().changeBias(doc, 0.0001);
+                }
+            });
+        }
+        for(Thread t: threads) {
+            t.start();
+        }
+        for(Thread t: threads) {
+            t.join();
+        }
+
+        // The deltas are kept in the stripes until they are committed.
+        Assert.assertEquals(0.0, s.weightDelta, 0.0);
+
+        for(Document doc: docs) {
+            doc.commit();
+        }
+
+        double expected = numberOfThreads * numberOfUpdates * 0.0001;
+        Assert.assertEquals(1.0 + expected, s.weight, 0.000001);
+        Assert.assertEquals(-expected, s.bias, 0.000001);
+        Assert.assertEquals(expected, outB.get().bias, 0.000001);
+        Assert.assertEquals(0.0, s.weightDelta, 0.0);
+
+        for(Document doc: docs) {
+            doc.clearActivations();
+        }
+    }
+
+
+    @Test
+    public void testConcurrentCommits() throws InterruptedException {
+        int numberOfThreads = 4;
+        int numberOfUpdates = 10000;
+
+        Model m = new Model(null, numberOfThreads);
+        m.concurrentTraining = true;
+
+        Neuron inA = m.createNeuron("A");
+        Neuron outB = m.createNeuron("B");
+
+        Neuron.init(outB, 0.0, INeuron.Type.EXCITATORY,
+                new Synapse.Builder()
+                        .setSynapseId(0)
+                        .setNeuron(inA)
+                        .setWeight(1.0)
+                        .setRecurrent(false)
+                        .setBias(0.0)
+        );
+
+        Synapse s = outB.inMemoryInputSynapses.first();
+
+        Document[] docs = new Document[numberOfThreads];
+        Thread[] threads = new Thread[numberOfThreads];
+        for(int t = 0; t < numberOfThreads; t++) {
+            Document doc = m.createDocument("Bla", t);
+            docs[t] = doc;
+            threads[t] = new Thread(() -> {
+                for(int i = 0; i < numberOfUpdates; i++) {
+                    s.updateDelta(doc, 0.0001, -0.0001);
+                    outB.get().changeBias(doc, 0.0001);
+
+                    // Each commit converts the neuron, while the other threads commit it as well.
+                    doc.commit();
+                }
+            });
+        }
+        for(Thread t: threads) {
+            t.start();
+        }
+        for(Thread t: threads) {
+            t.join();
+        }
+
+        double expected = numberOfThreads * numberOfUpdates * 0.0001;
+        Assert.assertEquals(1.0 + expected, s.weight, 0.000001);
+        Assert.assertEquals(-expected, s.bias, 0.000001);
+        Assert.assertEquals(expected, outB.get().bias, 0.000001);
+        Assert.assertEquals(0.0, s.weightDelta, 0.0);
+        Assert.assertEquals(0.0, outB.get().biasDelta, 0.0);
+
+        for(Document doc: docs) {
+            doc.clearActivations();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.training;
+
+import network.aika.DistanceFunction;
+import network.aika.Document;
+import network.aika.Model;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import network.aika.neuron.activation.Activation;
+import network.aika.neuron.activation.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static network.aika.training.SynapseEvaluation.DeleteMode.NONE;
+
+/**
+ *
+ * @author Lukas Molzberger
+ */
+public class ParallelLongTermLearningTest {
+
+    private static final String[] LABELS = new String[] {"A", "B", "C", "D", "E"};
+
+
+    private TreeMap<String, Double> train(ForkJoinPool pool) {
+        Model m = new Model();
+
+        Neuron[] neurons = new Neuron[LABELS.length];
+        for(int i = 0; i < LABELS.length; i++) {
+            neurons[i] = m.createNeuron(LABELS[i]);
+        }
+
+        LongTermLearning.Config config = new LongTermLearning.Config()
+                .setLTPLearnRate(0.5)
+                .setLTDLearnRate(0.1)
+                .setBeta(0.5)
+                .setCreateNewSynapses(true)
+                .setPool(pool)
+                .setSynapseEvaluation((s, iAct, oAct) ->
+                        new SynapseEvaluation.Result(
+                                new Synapse.Key(
+                                        false,
+                                        Range.Output.DIRECT,
+                                        false
+                                ),
+                                new TreeMap<>(),
+                                DistanceFunction.NONE,
+                                1.0,
+                                NONE
+                        )
+                );
+
+        TreeMap<String, Double> results = new TreeMap<>();
+        for(int round = 0; round < 3; round++) {
+            Document doc = m.createDocument("Bla");
+            for(int i = 0; i < LABELS.length; i++) {
+                // A different subset of the neurons is active in each round.
+                if((i + round) % 3 == 0) continue;
+
+                neurons[i].addInput(doc,
+                        new Activation.Builder()
+                                .setRange(0, 3)
+                                .setValue(0.2 * (i + 1))
+                                .setTargetValue(1.0)
+                );
+            }
+
+            LongTermLearning.train(doc, config);
+
+            for(Neuron n: neurons) {
+                for(Synapse s: n.inMemoryInputSynapses) {
+                    results.put(round + ":" + s.input.getLabel() + "->" + s.output.getLabel(), s.weightDelta);
+                }
+            }
+
+            doc.commit();
+            doc.clearActivations();
+        }
+
+        for(Neuron n: neurons) {
+            for(Synapse s: n.inMemoryInputSynapses) {
+                results.put(s.input.getLabel() + "->" + s.output.getLabel(), s.weight);
+            }
+        }
+        return results;
+    }
+
+
+    @Test
+    public void testParallelEqualsSequential() {
+        TreeMap<String, Double> sequential = train(null);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TreeMap<String, Double> parallel = train(pool);
+
+            Assert.assertFalse(sequential.isEmpty());
+            Assert.assertEquals(sequential, parallel);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
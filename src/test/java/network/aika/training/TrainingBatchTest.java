@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package network.aika.training;
+
+import network.aika.DistanceFunction;
+import network.aika.Document;
+import network.aika.Model;
+import network.aika.neuron.Neuron;
+import network.aika.neuron.Synapse;
+import network.aika.neuron.activation.Activation;
+import network.aika.neuron.activation.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.TreeMap;
+
+import static network.aika.training.SynapseEvaluation.DeleteMode.NONE;
+
+/**
+ *
+ * @author Lukas Molzberger
+ */
+public class TrainingBatchTest {
+
+
+    private void train(Model m, Neuron inA, Neuron inB, Neuron outC, TrainingBatch batch) {
+        Document doc = m.createDocument("Bla");
+        inA.addInput(doc,
+                new Activation.Builder()
+                        .setRange(0, 3)
+                        .setValue(1.0)
+                        .setTargetValue(null)
+        );
+        inB.addInput(doc,
+                new Activation.Builder()
+                        .setRange(0, 3)
+                        .setValue(1.0)
+                        .setTargetValue(null)
+        );
+
+        doc.process();
+
+        outC.addInput(doc,
+                new Activation.Builder()
+                        .setRange(0, 3)
+                        .setValue(0.0)
+                        .setTargetValue(1.0)
+        );
+
+        doc.supervisedTraining.train(
+                new SupervisedTraining.Config()
+                        .setLearnRate(1.0)
+                        .setPerformBackpropagation(false)
+                        .setSynapseEvaluation((s, iAct, oAct) ->
+                                new SynapseEvaluation.Result(
+                                        new Synapse.Key(
+                                                false,
+                                                Range.Output.DIRECT,
+                                                false
+                                        ),
+                                        new TreeMap<>(),
+                                        DistanceFunction.NONE,
+                                        1.0,
+                                        NONE
+                                )
+                        )
+        );
+
+        batch.add(doc);
+        Assert.assertTrue(doc.modifiedWeights.isEmpty());
+
+        doc.clearActivations();
+    }
+
+
+    @Test
+    public void testTrainingBatch() {
+        Model m = new Model();
+
+        Neuron inA = m.createNeuron("A");
+        Neuron inB = m.createNeuron("B");
+
+        Neuron outC = m.createNeuron("C");
+
+        TrainingBatch batch = new TrainingBatch(m);
+
+        train(m, inA, inB, outC, batch);
+        train(m, inA, inB, outC, batch);
+
+        Assert.assertEquals(2, batch.getNumberOfDocuments());
+        Assert.assertEquals(0, batch.numberOfCommits);
+
+        // The weights of the batch are not applied before the commit.
+        Assert.assertEquals(2, outC.inMemoryInputSynapses.size());
+        for(Synapse s: outC.inMemoryInputSynapses) {
+            Assert.assertEquals(0.0, s.weight, 0.0);
+            Assert.assertTrue(s.weightDelta > 0.0);
+        }
+
+        batch.commit();
+
+        Assert.assertEquals(0, batch.getNumberOfDocuments());
+        Assert.assertEquals(1, batch.numberOfCommits);
+        Assert.assertEquals(1, batch.numberOfConvertedNeurons);
+        for(Synapse s: outC.inMemoryInputSynapses) {
+            Assert.assertTrue(s.weight > 0.0);
+            Assert.assertEquals(0.0, s.weightDelta, 0.0);
+        }
+
+        Document doc = m.createDocument("Bla");
+        inA.addInput(doc,
+                new Activation.Builder()
+                        .setRange(0, 3)
+                        .setValue(1.0)
+        );
+        inB.addInput(doc,
+                new Activation.Builder()
+                        .setRange(0, 3)
+                        .setValue(1.0)
+        );
+
+        doc.process();
+
+        Assert.assertFalse(outC.getActivations(doc,true).isEmpty());
+
+        doc.clearActivations();
+    }
+}